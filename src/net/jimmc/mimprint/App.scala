@@ -8,6 +8,8 @@ package net.jimmc.mimprint
 import net.jimmc.swing.AboutWindow
 import net.jimmc.util.SResourcesBundle 
 
+import java.io.File
+
 import org.apache.log4j.xml.DOMConfigurator
 
 class App extends SResourcesBundle {
@@ -17,6 +19,11 @@ class App extends SResourcesBundle {
 	initLog4j()
         initResources(this)
 
+        if (args.length>0 && args(0)=="-batch") {
+            doBatch(args.drop(1))
+            return
+        }
+
         val aboutTitle = getResourceString("about.title")
         val aboutInfo = getResourceString("about.info")
 	val aboutWindow = new AboutWindow(aboutTitle, aboutInfo)
@@ -32,6 +39,7 @@ class App extends SResourcesBundle {
                     //Print out the help text and exit
                     val help = viewer.getResourceString("info.CommandHelp")
                     println(help)
+                    println(viewer.getResourceString("info.BatchHelp"))
                     System.exit(0)
                 case "-new" =>  //ignore
                 case "-toolbar" =>
@@ -42,6 +50,62 @@ class App extends SResourcesBundle {
         }
     }
 
+    //Render a playlist to image files without opening any windows.
+    //Args are [-dpi n] [-format png|jpg] [-threads n]
+    //playlist template outdir
+    private def doBatch(args:Array[String]) {
+        if (System.getProperty("java.awt.headless")==null)
+            System.setProperty("java.awt.headless","true")
+        val renderer = new BatchRenderer(this)
+        var files:List[String] = Nil
+        var i = 0
+        while (i < args.length) {
+            def nextArg():String = {
+                i = i + 1
+                if (i>=args.length)
+                    throw new IllegalArgumentException(
+                            "Missing value for "+args(i-1))
+                args(i)
+            }
+            def intArg():Int = {
+                val s = nextArg()
+                try {
+                    s.toInt
+                } catch {
+                    case ex:NumberFormatException =>
+                        batchUsage("Bad number for "+args(i-1)+": "+s)
+                }
+            }
+            try {
+                args(i) match {
+                    case "-dpi" => renderer.setDpi(intArg())
+                    case "-format" => renderer.setFormat(nextArg())
+                    case "-threads" => renderer.setThreadCount(intArg())
+                    case fn => files = files ::: List(fn)
+                }
+            } catch {
+                case ex:IllegalArgumentException =>
+                    batchUsage(ex.getMessage)
+            }
+            i = i + 1
+        }
+        files match {
+            case List(listFile, templateFile, outDir) =>
+                renderer.render(listFile,new File(templateFile),
+                        new File(outDir))
+            case _ =>
+                batchUsage("Need playlist, template and output directory")
+        }
+    }
+
+    //Print the error and our usage, and exit
+    private def batchUsage(msg:String):Nothing = {
+        println(msg)
+        println(getResourceString("info.BatchHelp"))
+        System.exit(1)
+        throw new IllegalStateException("not reached")
+    }
+
     def initLog4j() {
 	val cfName = "mimprint.log4j.configfile"
 	val configFile = System.getProperty(cfName)
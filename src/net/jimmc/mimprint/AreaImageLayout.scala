@@ -13,6 +13,12 @@ import java.awt.Image
 import java.awt.Rectangle
 import java.io.File
 
+/** An image ready to be displayed in an AreaImageLayout: the item it
+ * came from, the rotation at which we display it, and the image after
+ * scale and rotation to page coordinates.
+ */
+case class PreparedImage(item:PlayItem, path:String, rot:Int, image:Image)
+
 class AreaImageLayout(x:Int, y:Int, width:Int, height:Int) extends AreaLayout {
     setBounds(x,y,width,height)
 
@@ -38,19 +44,28 @@ class AreaImageLayout(x:Int, y:Int, width:Int, height:Int) extends AreaLayout {
 
     def hasImage() = image!=null
 
+    /** True if showing newItem in this area would need a different image
+     * than we have now.  The same item can still need a new image if the
+     * area has changed shape so that the image needs rotating.
+     */
+    def needsImage(newItem:PlayItem):Boolean = {
+        if (newItem==null)
+            return item!=null
+        if (newItem!=item)
+            return true
+        if (transformedImage==null)
+            return false
+        //same image, but we also want to look at the rotation
+        val areaBounds:Rectangle = getBoundsInMargin()
+        val imageAspect = (transformedImage.getWidth(null)>
+                           transformedImage.getHeight(null))
+        val areaAspect = (areaBounds.width>areaBounds.height)
+        imageAspect ^ areaAspect
+    }
+
     def setImage(newItem:PlayItem, comp:Component) {
-        if (newItem==item) {
-            if (transformedImage==null)
-                return
-            //same image, but we also want to look at the rotation
-            val areaBounds:Rectangle = getBoundsInMargin()
-            val imageAspect = (transformedImage.getWidth(null)>
-                               transformedImage.getHeight(null))
-            val areaAspect = (areaBounds.width>areaBounds.height)
-            val needsRotate = imageAspect ^ areaAspect
-            if (!needsRotate)
-                return      //Same image and rotation as before, ignore update.
-        }
+        if (!needsImage(newItem))
+            return      //Same image and rotation as before, ignore update.
         if (newItem==null) {
             path = null
             image = null
@@ -59,24 +74,45 @@ class AreaImageLayout(x:Int, y:Int, width:Int, height:Int) extends AreaLayout {
             item = null
             return
         }
-        path = new File(newItem.baseDir,newItem.fileName).getPath
-        image = ImageUtil.getImage(comp,path)
+        setPreparedImage(prepareImage(newItem,comp))
+    }
+
+    /** Get the image for an item scaled and rotated to fit this area.
+     * This does not change our state, so it can be called on any thread;
+     * pass the result to setPreparedImage to display it.
+     */
+    def prepareImage(newItem:PlayItem, comp:Component):PreparedImage = {
+        val path = new File(newItem.baseDir,newItem.fileName).getPath
+        val rot = getRotation(newItem,path,comp)
+        PreparedImage(newItem,path,rot,getTransformedImage(comp,path,rot))
+    }
+
+    //Get the rotation at which to display an item
+    private def getRotation(newItem:PlayItem, path:String,
+            comp:Component):Int = {
         //We look at the aspect ratio of the image and
         //auto-rotate it to match the aspect ratio of
         //the image display area.
-        ImageUtil.loadCompleteImage(comp,image) //we need the image size
+        val (imageWidth, imageHeight) = ImageUtil.getImageSize(comp,path)
         val areaBounds:Rectangle = getBoundsInMargin()
-        val imageAspect = (image.getWidth(null)>image.getHeight(null))
+        val imageAspect = (imageWidth>imageHeight)
         val areaAspect = (areaBounds.width>areaBounds.height)
         val needsRotate = imageAspect ^ areaAspect
         //We only allow playlist rotation in increments of
         //180 degrees.  The user can not rotate an image by
-        //90 degrees in the printable area, if he wants that
-        //he must tweak that area's size to change the
+        //90 degrees in the printable area, if they want that
+        //they must tweak that area's size to change the
         //aspect ratio.
-        rot = (newItem.getRotFlag() & ~1)+(if (needsRotate) 1 else 0)
-        transformedImage = ImageUtil.scaleAndRotate(image,rot,path,comp)
-        item = newItem
+        (newItem.getRotFlag() & ~1)+(if (needsRotate) 1 else 0)
+    }
+
+    /** Display an image from prepareImage. */
+    def setPreparedImage(p:PreparedImage) {
+        path = p.path
+        rot = p.rot
+        image = p.image
+        transformedImage = p.image
+        item = p.item
     }
 
     def unsetImage() = setImage(null,null)
@@ -105,7 +141,11 @@ class AreaImageLayout(x:Int, y:Int, width:Int, height:Int) extends AreaLayout {
             //make a copy of our caller's gc so our changes don't
             //affect the caller.
         val printItem = playList.getItem(start)
-        if (printItem==item)
+        if (printItem.fileName==null || printItem.fileName=="") {
+            //empty item, leave this area blank
+        } else if (printsFromFile(g2,comp))
+            printImageFromFile(g2,comp,printItem)
+        else if (printItem==item)
             paintImage(g2) //this changes the transformation in g2
         else {
             paintImage(g2,comp,printItem)
@@ -114,6 +154,29 @@ class AreaImageLayout(x:Int, y:Int, width:Int, height:Int) extends AreaLayout {
         1
     }
 
+    /** True if drawing this area into g2 needs more pixels than an image
+     * prepared for comp has, as when printing at a high resolution,
+     * so that we should print it straight from the file.
+     */
+    def printsFromFile(g2:Graphics2D, comp:Component):Boolean =
+        PrintRenderer.deviceSize(g2,getBoundsInMargin()) >
+                (comp.getWidth max comp.getHeight)
+
+    private def printImageFromFile(g2:Graphics2D, comp:Component,
+            item:PlayItem) {
+        val path = new File(item.baseDir,item.fileName).getPath
+        val rot = getRotation(item,path,comp)
+        val b = getBoundsInMargin()
+        if (!PrintRenderer.paintImage(g2,path,rot,b)) {
+            //Use an image prepared at up to the size it will be printed,
+            //capped to one band's worth of memory; g2 scales it up.
+            //It is not cached, since it would push out everything else.
+            val (width, height) = PrintRenderer.cappedDimensions(g2,b)
+            paintTransformedImage(g2,ImageUtil.createTransformedImage(comp,
+                    path,rot,width,height))
+        }
+    }
+
     private def paintImage(g2:Graphics2D) {
         if (transformedImage==null)
             return     //no image to paint
@@ -121,26 +184,17 @@ class AreaImageLayout(x:Int, y:Int, width:Int, height:Int) extends AreaLayout {
     }
 
     private def paintImage(g2:Graphics2D, comp:Component, item:PlayItem) {
-        val path = new File(item.baseDir,item.fileName).getPath
-        val image = ImageUtil.getImage(comp,path)
-        //We look at the aspect ratio of the image and
-        //auto-rotate it to match the aspect ratio of
-        //the image display area.
-        ImageUtil.loadCompleteImage(comp,image) //we need the image size
-        val areaBounds:Rectangle = getBoundsInMargin()
-        val imageAspect = (image.getWidth(null)>image.getHeight(null))
-        val areaAspect = (areaBounds.width>areaBounds.height)
-        val needsRotate = imageAspect ^ areaAspect
-        //We only allow playlist rotation in increments of
-        //180 degrees.  The user can not rotate an image by
-        //90 degrees in the printable area, if he wants that
-        //he must tweak that area's size to change the
-        //aspect ratio.
-        val rot = (item.getRotFlag() & ~1)+(if (needsRotate) 1 else 0)
-        val txImage = ImageUtil.scaleAndRotate(image,rot,path,comp)
-        paintTransformedImage(g2,txImage)
+        paintTransformedImage(g2,prepareImage(item,comp).image)
     }
 
+    //Get the image scaled and rotated to fit the component.
+    //The result is cached, so an image that was prepared ahead of time
+    //(see PagePreparer) is ready to use.
+    private def getTransformedImage(comp:Component, path:String,
+            rot:Int):Image =
+        ImageUtil.getTransformedImage(comp,path,rot,
+                comp.getWidth,comp.getHeight)
+
     private def paintTransformedImage(g2:Graphics2D, txImage:Image) {
         val b:Rectangle = getBoundsInMargin()
         val transform:AffineTransform = new AffineTransform()
@@ -182,48 +182,11 @@ class AreaPage(viewer:SViewer, tracker:PlayListTracker)
 
     def displayPlayList(playList:PlayList, start:Int) {
         currentStart = start
-        /*val n =*/ displayPlayList(areaLayout,playList,start)
-        //n is the number of items from the list which are displayed
+        //Prepare the images for all of the areas at once
+        PagePreparer.displayPage(areaLayout,playList,start,this)
         this.playList = playList
     }
 
-    //TODO - clean this up once everthing is converted to scala.
-    //This method should be in the areaLayout class, and perhaps
-    //after I convert that class over to scala I will put it there.
-    //listIndex tells where in the list to start for this layout;
-    //we return the number of images consumed (i.e. the number of
-    //image locations in this layout, if less than the remaining
-    //number of images in the list).
-    private def displayPlayList(aLayout:AreaLayout, list:PlayList,
-            listIndex:Int):Int = {
-        var idx = listIndex
-        //Check for a top-level AreaImageLayout
-        aLayout match {
-            case img:AreaImageLayout =>
-                if (idx < list.size) {
-                    val item = list.getItem(idx)
-                    if (item.fileName==null || item.fileName=="") {
-                        //Found an empty item
-                        img.unsetImage()
-                    } else {
-                        img.setImage(item,this)
-                    }
-                    return 1
-                } else {
-                    img.unsetImage()  //clear the image from this area
-                    return 0
-                }
-            case _ =>   //fall through and process below
-        }
-        val subAreaCount = aLayout.getAreaCount
-        for (n <- 0 until subAreaCount) {
-            val subArea = aLayout.getArea(n)
-            val dAreaCount = displayPlayList(subArea, list, idx)
-            idx = idx + dAreaCount
-        }
-        idx - listIndex //number of items we used
-    }
-
     /** Select the image area at the specified location. */
     def selectArea(windowPoint:Point) {
         if (controls!=null)
@@ -479,14 +442,21 @@ class AreaPage(viewer:SViewer, tracker:PlayListTracker)
         val paperWidth = paper.getWidth.asInstanceOf[Int]
         val paperHeight = paper.getHeight.asInstanceOf[Int]
         val start = pageIndex * imagesPerPage
-	printPage(graphics,paperWidth,paperHeight,start)
+        val next = if (pageIndex+1<totalPages) start+imagesPerPage else -1
+	printPage(graphics,paperWidth,paperHeight,start,next)
 	Printable.PAGE_EXISTS
     }
   //End Printable interface
 
     //Print one page of images
-    private def printPage(g:Graphics, devWidth:Int, devHeight:Int, start:Int) ={
+    private def printPage(g:Graphics, devWidth:Int, devHeight:Int,
+            start:Int, next:Int) ={
         val g2 = setupGraphics(g, devWidth, devHeight)
+        //Get all of the images for this page ready at once, then start
+        //on the next page while the printer system spools this one.
+        PagePreparer.preparePage(areaLayout,playList,start,this,g2)
+        if (next>=0)
+            PagePreparer.prefetchPage(areaLayout,playList,next,this,g2)
         areaLayout.printPage(g2,this,playList,start)
     }
 
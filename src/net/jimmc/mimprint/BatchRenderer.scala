@@ -0,0 +1,148 @@
+/* BatchRenderer.scala
+ *
+ * Render the pages of a playlist to image files without a window.
+ */
+
+package net.jimmc.mimprint
+
+import net.jimmc.util.SResources
+
+import java.awt.Canvas
+import java.awt.Color
+import java.awt.image.BufferedImage
+import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import javax.imageio.ImageIO
+
+/** Renders every page of a playlist, using a layout template, into image
+ * files, one file per page, without opening any windows, so it can be
+ * run with java.awt.headless=true.
+ * Pages are rendered on a pool of worker threads.  Each worker holds one
+ * page image at a time and writes it out before starting on the next
+ * page.  Each image area draws its image straight from the file at the
+ * size of the area (see PrintRenderer), a band at a time, so the memory
+ * used is bounded by the number of workers times the size of one page
+ * plus one band.  Images that can't be read that way are prepared whole,
+ * but at no more than one band's worth of pixels, and are not cached.
+ */
+class BatchRenderer(app:SResources) {
+    private var dpi = 300
+    private var format = "png"
+    private var threadCount = Runtime.getRuntime.availableProcessors
+
+    /** Set the resolution of the output images in dots per inch. */
+    def setDpi(dpi:Int) {
+        if (dpi<=0)
+            throw new IllegalArgumentException("Bad dpi "+dpi)
+        this.dpi = dpi
+    }
+
+    /** Set the format of the output images, png or jpg. */
+    def setFormat(format:String) {
+        format.toLowerCase match {
+            case "png" => this.format = "png"
+            case "jpg" | "jpeg" => this.format = "jpg"
+            case _ => throw new IllegalArgumentException(
+                    "Unknown image format "+format)
+        }
+    }
+
+    /** Set the number of pages to render at once. */
+    def setThreadCount(n:Int) {
+        if (n<=0)
+            throw new IllegalArgumentException("Bad thread count "+n)
+        threadCount = n
+    }
+
+    /** Render the pages of the playlist into files in outDir,
+     * using the page layout in templateFile.
+     * @return The number of pages written.
+     */
+    def render(listFileName:String, templateFile:File, outDir:File):Int = {
+        val startTime = System.currentTimeMillis
+        val playList = PlayList.load(null,listFileName)
+        val pageLayout = new PageLayout(app)
+        pageLayout.loadLayoutTemplate(templateFile)
+        val areaLayout = pageLayout.getAreaLayout
+        val imagesPerPage = areaLayout.getImageAreaCount
+        if (imagesPerPage<=0)
+            throw new IllegalArgumentException(
+                    "No image areas in template "+templateFile)
+        val pageCount = (playList.size + imagesPerPage - 1)/imagesPerPage
+        if (!outDir.isDirectory && !outDir.mkdirs())
+            throw new IllegalArgumentException(
+                    "Can't create output directory "+outDir)
+
+        //Page dimensions are in thousandths of the page unit
+        val unitsPerInch = if (pageLayout.getPageUnit==PageLayout.UNIT_CM)
+                2.54 else 1.0
+        def toPixels(n:Int) = math.round(n.asInstanceOf[Double] /
+                PageValue.UNIT_MULTIPLIER * dpi / unitsPerInch).toInt
+        val devWidth = toPixels(pageLayout.getPageWidth)
+        val devHeight = toPixels(pageLayout.getPageHeight)
+        //An image area draws from the file when it covers more pixels
+        //than the component it is given, so we give them a component
+        //with no size, so that each one draws at its own size in the
+        //page.  It never has a peer.
+        val comp = new Canvas()
+
+        //The areas do not change while we print, so all of the workers
+        //can share the layout.
+        val executor = Executors.newFixedThreadPool(
+                threadCount.min(pageCount.max(1)))
+        try {
+            val work = for (page <- 0 until pageCount) yield {
+                executor.submit(new Callable[Long] {
+                    def call():Long = {
+                        val t0 = System.currentTimeMillis
+                        val f = new File(outDir,pageFileName(page,pageCount))
+                        val image = renderPage(pageLayout,comp,playList,
+                                page*imagesPerPage,devWidth,devHeight)
+                        if (!ImageIO.write(image,format,f))
+                            throw new IllegalArgumentException(
+                                    "No writer for image format "+format)
+                        val t = System.currentTimeMillis - t0
+                        println("Page "+(page+1)+"/"+pageCount+": "+
+                                f.getPath+" "+t+" ms")
+                        t
+                    }
+                })
+            }
+            val pageTimes = work.map(PagePreparer.waitFor(_))
+            val elapsed = System.currentTimeMillis - startTime
+            println("Wrote "+pageCount+" pages of "+devWidth+"x"+devHeight+
+                    " at "+dpi+" dpi in "+elapsed+" ms"+
+                    (if (pageCount>0) ", average "+
+                        (pageTimes.sum/pageCount)+" ms per page" else ""))
+        } finally {
+            executor.shutdownNow()
+        }
+        pageCount
+    }
+
+    private def pageFileName(page:Int, pageCount:Int):String = {
+        val digits = (pageCount.toString.length).max(3)
+        ("page-%0"+digits+"d.%s").format(page+1,format)
+    }
+
+    //Draw one page into a new image
+    private def renderPage(pageLayout:PageLayout, comp:Canvas,
+            playList:PlayList, start:Int,
+            devWidth:Int, devHeight:Int):BufferedImage = {
+        val image = new BufferedImage(devWidth,devHeight,
+                BufferedImage.TYPE_INT_RGB)
+        val g2 = image.createGraphics()
+        try {
+            g2.setColor(Color.white)
+            g2.fillRect(0,0,devWidth,devHeight)
+            ImageUtil.scaleAndTranslate(g2,pageLayout.getPageWidth,
+                    pageLayout.getPageHeight,devWidth,devHeight)
+            g2.setColor(Color.black)
+            pageLayout.getAreaLayout.printPage(g2,comp,playList,start)
+        } finally {
+            g2.dispose()
+        }
+        image
+    }
+}
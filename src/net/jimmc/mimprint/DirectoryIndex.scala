@@ -0,0 +1,214 @@
+/* DirectoryIndex.scala
+ *
+ * Cached listings of the playable files and subdirectories of a directory.
+ */
+
+package net.jimmc.mimprint
+
+import net.jimmc.util.NaturalOrder
+import net.jimmc.util.SizedLruCache
+
+import java.io.File
+import java.io.IOException
+import java.nio.file.ClosedWatchServiceException
+import java.nio.file.DirectoryStream
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardWatchEventKinds
+import java.nio.file.WatchKey
+import java.nio.file.WatchService
+import java.nio.file.attribute.BasicFileAttributes
+
+import scala.collection.mutable.ArrayBuffer
+import scala.collection.mutable.HashMap
+
+/** Lists of the files we can play and the subdirectories of a directory,
+ * sorted in our display order.
+ * We read the names and attributes of the directory entries in one pass
+ * and keep the lists in a cache.  Each directory in the cache is
+ * registered with a WatchService, and we drop the lists for a directory
+ * when a file is created or deleted in it, so we don't go back to the
+ * disk unless something has changed.
+ * Directories we can't watch are not cached.
+ */
+object DirectoryIndex {
+    private case class Listing(playable:Array[String], subdirs:Array[String],
+            generation:Long)
+    private var lastGeneration = 0L
+
+    //The cost of a listing is the number of names in it
+    private val cache = new SizedLruCache[Path,Listing]("DirectoryIndex",
+            100000)
+    private val watchKeys = new HashMap[Path,WatchKey]
+    private var watcher:WatchService = null
+    private var watchFailed = false
+    @volatile private var changeCount = 0
+        //incremented whenever we see a change to any watched directory
+
+    /** Get the names of the image and playlist files in the directory. */
+    def getPlayableFileNames(dir:File):Array[String] =
+        getListing(dir).playable.clone
+
+    /** Get the names of the subdirectories of the directory. */
+    def getSubdirNames(dir:File):Array[String] =
+        getListing(dir).subdirs.clone
+
+    /** Get the sorted names of the subdirectories of the directory
+     * without copying them.  The caller must not modify the array. */
+    private[mimprint] def sortedSubdirNames(dir:File):Array[String] =
+        getListing(dir).subdirs
+
+    /** Get the generation of our listing of the directory, or -1 if we
+     * don't have one.  Each listing we read gets a new generation, so if
+     * this is the same as an earlier value, nothing has been created or
+     * deleted in the directory since then. */
+    def generation(dir:File):Long =
+        cache.get(pathFor(dir)).map(_.generation).getOrElse(-1L)
+
+    /** Forget what we know about the directory. */
+    def invalidate(dir:File) = cache.remove(pathFor(dir))
+
+    private def pathFor(dir:File):Path = dir.getAbsoluteFile.toPath
+
+    private def getListing(dir:File):Listing = {
+        val path = pathFor(dir)
+        val cached = cache.get(path)
+        if (cached.isDefined)
+            return cached.get
+        //Start watching before we read the directory so that we don't
+        //miss any changes made while we are reading it.
+        val watched = watch(path)
+        val startCount = changeCount
+        val listing = readListing(path)
+        //If something changed while we were reading, our listing may be
+        //out of date, so don't cache it.  We check and put while holding
+        //the lock watchLoop takes, so that a change can't slip in between.
+        synchronized {
+            if (watched && changeCount==startCount) {
+                cache.put(path,listing,
+                        1+listing.playable.length+listing.subdirs.length)
+                dropUnusedWatches()
+            }
+        }
+        listing
+    }
+
+    //Read the directory in one pass.
+    //If we can't read it, it has no files or subdirectories.
+    private def readListing(dir:Path):Listing = {
+        val playable = new ArrayBuffer[String]
+        val subdirs = new ArrayBuffer[String]
+        val stream:DirectoryStream[Path] = try {
+            Files.newDirectoryStream(dir)
+        } catch {
+            case ex:IOException =>
+                return Listing(Array(),Array(),nextGeneration())
+        }
+        try {
+            val iter = stream.iterator
+            while (iter.hasNext) {
+                val p = iter.next
+                val name = p.getFileName.toString
+                if (FileInfo.isImageFileName(name) ||
+                        FileInfo.isOurFileName(name))
+                    playable += name
+                val isDir = try {
+                    Files.readAttributes(p,classOf[BasicFileAttributes]).
+                            isDirectory
+                } catch {
+                    case ex:IOException => false  //e.g. a broken link
+                }
+                if (isDir)
+                    subdirs += name
+            }
+        } catch {
+            case ex:Exception => //DirectoryIteratorException, use what we got
+        } finally {
+            stream.close()
+        }
+        Listing(sortNames(playable.toArray),sortNames(subdirs.toArray),
+                nextGeneration())
+    }
+
+    private def nextGeneration():Long = synchronized {
+        lastGeneration = lastGeneration + 1
+        lastGeneration
+    }
+
+    private def sortNames(a:Array[String]):Array[String] = {
+        NaturalOrder.sort(a)
+        a
+    }
+
+    //Register the directory with our watcher.
+    //Return false if we can't watch it.
+    private def watch(dir:Path):Boolean = synchronized {
+        if (watchKeys.contains(dir))
+            return true
+        if (watcher==null && !startWatcher())
+            return false
+        try {
+            val key = dir.register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE)
+            watchKeys.put(dir,key)
+            true
+        } catch {
+            case ex:IOException => false
+            case ex:UnsupportedOperationException => false
+        }
+    }
+
+    private def startWatcher():Boolean = {
+        if (watchFailed)
+            return false
+        try {
+            watcher = FileSystems.getDefault.newWatchService
+        } catch {
+            case ex:IOException =>
+                watchFailed = true
+                return false
+            case ex:UnsupportedOperationException =>
+                watchFailed = true
+                return false
+        }
+        val t = new Thread("DirectoryIndex") {
+            override def run() = watchLoop(watcher)
+        }
+        t.setDaemon(true)
+        t.start()
+        true
+    }
+
+    private def watchLoop(ws:WatchService) {
+        while (true) {
+            val key = try {
+                ws.take()
+            } catch {
+                case ex:InterruptedException => return
+                case ex:ClosedWatchServiceException => return
+            }
+            key.pollEvents()    //we don't care which entries changed
+            val dir = key.watchable.asInstanceOf[Path]
+            synchronized {
+                changeCount = changeCount + 1
+                cache.remove(dir)
+                if (!key.reset())
+                    watchKeys.remove(dir)   //the directory is gone
+            }
+        }
+    }
+
+    //Stop watching directories that have dropped out of our cache,
+    //once there are enough of them to be worth looking for.
+    private def dropUnusedWatches() = synchronized {
+        if (watchKeys.size>2*cache.size+16) {
+            val unused = watchKeys.keys.filter(!cache.contains(_)).toList
+            for (dir <- unused) {
+                watchKeys(dir).cancel()
+                watchKeys.remove(dir)
+            }
+        }
+    }
+}
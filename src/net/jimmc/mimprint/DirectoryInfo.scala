@@ -0,0 +1,117 @@
+/* DirectoryInfo.scala
+ *
+ * Cached per-directory data used to describe the files in a directory.
+ */
+
+package net.jimmc.mimprint
+
+import net.jimmc.util.FileUtilS
+import net.jimmc.util.SizedLruCache
+import net.jimmc.util.ZoneInfo
+
+import java.io.File
+import java.io.IOException
+import java.text.DateFormat
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.SimpleTimeZone
+import java.util.TimeZone
+
+import scala.collection.mutable.HashMap
+
+/** Data we need over and over when describing the files in a directory:
+ * the timezone from the directory's TZ file, along with the date formats
+ * for that zone, and the text from the files' sidecar text files.
+ * Everything is checked against the modification time of the file it
+ * came from, and is reread when that changes.
+ */
+object DirectoryInfo {
+    //One per directory
+    private class DirEntry(val tzModified:Long, val zone:TimeZone) {
+        //The formats we have made, keyed by zone offset and DST flag
+        private val formats = new HashMap[(Int,Boolean),SimpleDateFormat]
+
+        def format(modTimeMillis:Long):String = synchronized {
+            val modDate = new Date(modTimeMillis)
+            if (zone==null)
+                return getFormat((0,false),null,"").format(modDate)
+            //What a hack... the SimpleDateFormat code doesn't
+            //do the right time-zone calculations, it uses
+            //TimeZone.getRawOffset, which just gets the first
+            //offset in the timezone.  We need it to get the
+            //offset for the specified time.
+            val zOff:Int = zone.getOffset(modTimeMillis)
+            val dst = zone.inDaylightTime(modDate)
+            val stz = new SimpleTimeZone(zOff,zone.getID())
+            val dstStr = if (dst) " '(DST)'" else ""
+            getFormat((zOff,dst),stz," zzzz"+dstStr).format(modDate)
+        }
+
+        private def getFormat(key:(Int,Boolean), tz:TimeZone,
+                patternSuffix:String):SimpleDateFormat = {
+            formats.getOrElseUpdate(key, {
+                val dFmt = DateFormat.getDateTimeInstance().
+                        asInstanceOf[SimpleDateFormat]
+                if (tz!=null) {
+                    dFmt.setTimeZone(tz)
+                    dFmt.applyPattern(dFmt.toPattern()+patternSuffix)
+                }
+                dFmt
+            })
+        }
+    }
+
+    private case class TextEntry(modified:Long, length:Long, text:String)
+
+    private val dirs = new SizedLruCache[File,DirEntry]("DirectoryInfo",1000)
+    //The cost of a text entry is its length
+    private val texts = new SizedLruCache[File,TextEntry]("SidecarText",
+            2*1024*1024)
+
+    /** Format the modification time of a file in the directory,
+     * using the timezone from the TZ file in the directory if there is one.
+     */
+    def formatDate(dir:File, modTimeMillis:Long):String =
+        getDirEntry(dir).format(modTimeMillis)
+
+    private def getDirEntry(dir:File):DirEntry = {
+        val tzFile = new File(dir,"TZ")
+        val tzModified = tzFile.lastModified    //0 if no file
+        val cached = dirs.get(dir)
+        if (cached.isDefined && cached.get.tzModified==tzModified)
+            return cached.get
+        val zone =
+            if (tzModified==0)
+                null
+            else try {
+                ZoneInfo.forFile(tzFile)
+            } catch {
+                case ex:IOException =>
+println("IOException reading ZoneInfo: "+ex.getMessage())
+                    null    //use the default timezone
+            }
+        val entry = new DirEntry(tzModified,zone)
+        dirs.put(dir,entry,1)
+        entry
+    }
+
+    /** Get the contents of a sidecar text file, or null if there
+     * is no such file.
+     * @throws IOException if there is an error reading the file.
+     */
+    def getText(f:File):String = {
+        val modified = f.lastModified           //0 if no file
+        val length = f.length
+        val cached = texts.get(f)
+        if (cached.isDefined && cached.get.modified==modified &&
+                cached.get.length==length)
+            return cached.get.text
+        val text = if (modified==0) null else FileUtilS.readFile(f)
+        texts.put(f,TextEntry(modified,length,text),
+                if (text==null) 1 else text.length)
+        text
+    }
+
+    /** Forget what we have read from a sidecar text file. */
+    def invalidateText(f:File) = texts.remove(f)
+}
@@ -0,0 +1,75 @@
+/* DirectoryNavigator.scala
+ *
+ * Find the directory before or after a directory in a tree.
+ */
+
+package net.jimmc.mimprint
+
+import java.io.File
+
+/** Move from a directory to its next or previous sibling directory,
+ * in the same order as we display subdirectories.
+ * When there are no more siblings in that direction, we move the parent
+ * directory and take its first (or last) subdirectory, going as far up
+ * the tree as we need to.
+ * The sorted sibling lists come from the DirectoryIndex, which caches them
+ * until something changes in the directory, so each step is a binary
+ * search rather than a directory scan.
+ */
+object DirectoryNavigator {
+    def getNextDirectory(dir:File):File = getRelativeDirectory(dir,1)
+
+    def getPreviousDirectory(dir:File):File = getRelativeDirectory(dir,-1)
+
+    /** Get the directory move places after (or before, if negative)
+     * the given directory, or null if there is none. */
+    def getRelativeDirectory(dir:File, move:Int):File = {
+        val absDir = dir.getAbsoluteFile
+        val parentDir = absDir.getParentFile
+        if (parentDir==null)
+            return null         //the root has no siblings
+        val siblings = DirectoryIndex.sortedSubdirNames(parentDir)
+        val n = find(siblings,absDir.getName)
+        val newIndex =
+            if (n>=0) n + move
+            else {
+                //Our directory is gone; move from where it would have been
+                val insertAt = -(n + 1)
+                if (move>0) insertAt + move - 1 else insertAt + move
+            }
+        if (newIndex>=0 && newIndex<siblings.length)
+            return new File(parentDir,siblings(newIndex))
+        //We are at the end/start of our sibling directories,
+        //so move the parent to its next directory and take the
+        //first/last subdirectory in that one.
+        var newParent = getRelativeDirectory(parentDir,move)
+        while (newParent!=null) {
+            val subdirs = DirectoryIndex.sortedSubdirNames(newParent)
+            if (subdirs.length>0) {
+                val name = if (move<0) subdirs(subdirs.length-1)
+                           else subdirs(0)
+                return new File(newParent,name)
+            }
+            newParent = getRelativeDirectory(newParent,move)
+        }
+        null
+    }
+
+    //Binary search for name in the sorted names.
+    //Return its index, or -(insertion point)-1 if not found.
+    private def find(names:Array[String], name:String):Int = {
+        var lo = 0
+        var hi = names.length - 1
+        while (lo<=hi) {
+            val mid = (lo + hi) >>> 1
+            val c = FileInfo.compareFileNames(names(mid),name)
+            if (c<0)
+                lo = mid + 1
+            else if (c>0)
+                hi = mid - 1
+            else
+                return mid
+        }
+        -(lo + 1)
+    }
+}
@@ -0,0 +1,100 @@
+/* FileClassifier.scala
+ *
+ * Tell what kind of mpr file a file is by looking at its first few KB.
+ */
+
+package net.jimmc.mimprint
+
+import net.jimmc.util.SizedLruCache
+
+import java.io.File
+import java.io.FileInputStream
+import java.io.IOException
+import java.io.StringReader
+
+/** Decides whether one of our (mpr) files is a playlist or a layout
+ * template without reading all of it.
+ * We read at most the first SNIFF_BYTES bytes of the file.  If that looks
+ * like XML with a page element it is a template; otherwise we run the
+ * complete lines of it through the PlayListParser, and if there are no
+ * errors we call it a playlist.  An error further into a playlist file
+ * is not found until the whole file is loaded.
+ * Results are cached, and checked against the modification time and
+ * length of the file.
+ */
+object FileClassifier {
+    //kind values
+    val UNKNOWN = 0
+    val PLAYLIST = 1
+    val TEMPLATE = 2
+
+    private val SNIFF_BYTES = 4096
+    private val MAX_ENTRIES = 5000
+
+    private case class Entry(modified:Long, length:Long, kind:Int)
+
+    private val kinds = new SizedLruCache[File,Entry]("FileClassifier",
+            MAX_ENTRIES)
+
+    /** Get the kind of the file: PLAYLIST, TEMPLATE or UNKNOWN.
+     * A file we can't read is UNKNOWN.
+     */
+    def classify(f0:File):Int = {
+        val f = f0.getAbsoluteFile
+        val modified = f.lastModified
+        val length = f.length
+        val cached = kinds.get(f)
+        if (cached.isDefined && cached.get.modified==modified &&
+                cached.get.length==length)
+            return cached.get.kind
+        val kind = try {
+            classify(readHead(f),length<=SNIFF_BYTES)
+        } catch {
+            case ex:IOException => UNKNOWN
+        }
+        kinds.put(f,Entry(modified,length,kind),1)
+        kind
+    }
+
+    //Read the first part of the file as text
+    private def readHead(f:File):String = {
+        val in = new FileInputStream(f)
+        try {
+            val buf = new Array[Byte](SNIFF_BYTES)
+            var n = 0
+            var count = 0
+            while (n<buf.length && count>=0) {
+                count = in.read(buf,n,buf.length-n)
+                if (count>0)
+                    n = n + count
+            }
+            new String(buf,0,n)     //default charset, as PlayList.load
+        } finally {
+            in.close()
+        }
+    }
+
+    //Classify the first part of a file; complete is true if that is
+    //the whole file.
+    private def classify(head:String, complete:Boolean):Int = {
+        val text = head.dropWhile(c =>
+                c=='\uFEFF' || Character.isWhitespace(c))  //skip BOM, space
+        if (text.startsWith("<"))
+            return if (text.contains("<page")) TEMPLATE else UNKNOWN
+        if (text.exists(c => Character.isISOControl(c) &&
+                c!='\n' && c!='\r' && c!='\t'))
+            return UNKNOWN      //binary data
+        //Only look at complete lines, unless we have the whole file
+        val lines =
+            if (complete) head
+            else head.substring(0,head.lastIndexOf('\n')+1)
+        try {
+            val parser = new PlayListParser(new StringReader(lines),null)
+            while (parser.nextItem()!=null)
+                ()
+            PLAYLIST
+        } catch {
+            case ex:IllegalArgumentException => UNKNOWN
+        }
+    }
+}
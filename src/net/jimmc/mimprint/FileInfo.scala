@@ -6,18 +6,11 @@
 
 package net.jimmc.mimprint
 
-import net.jimmc.util.FileUtilS
-import net.jimmc.util.StandardUi
-import net.jimmc.util.ZoneInfo
+import net.jimmc.util.NaturalOrder
 
 import java.io.File
 import java.io.FileNotFoundException
 import java.io.IOException
-import java.text.DateFormat
-import java.text.SimpleDateFormat
-import java.util.Date
-import java.util.SimpleTimeZone
-import java.util.TimeZone
 import javax.swing.ImageIcon
 
 object FileInfo {
@@ -42,19 +35,13 @@ object FileInfo {
         return false
     }
 
-    /** True if we recognize the filename and it looks like a playlist. */
+    /** True if we recognize the filename and it looks like a playlist.
+     * We only look at the start of the file, see FileClassifier.
+     */
     def isPlayList(name:String):Boolean = {
         if (!isOurFileName(name))
             return false;
-        try {
-            val ui:StandardUi = null //hack: assume the load operation
-                    //doesn't actually need the ui
-            PlayList.load(ui,name)
-            return true         //no errors, assume it really is a playlist
-        } catch {
-            case e:IllegalArgumentException =>
-                return false            //invalid playlist entry
-        }
+        FileClassifier.classify(new File(name))==FileClassifier.PLAYLIST
     }
 
     /** True if the file name is for an image file that we recognize. */
@@ -70,28 +57,10 @@ object FileInfo {
         return false
     }
 
-    def compareFileNames(s1:String, s2:String):Int = {
-        val n1 = getLongFromString(s1)
-        val n2 = getLongFromString(s2)
-        if (n1>n2)
-            return 1
-        else if (n1<n2)
-            return -1
-        else
-            return s1.compareTo(s2)
-    }
-
-    /** Get an int from the string. */
-    private def getLongFromString(s:String):Long = {
-        val firstDigit = s.findIndexOf(Character.isDigit(_))
-        if (firstDigit<0)
-            return 0    //no digits in this string
-        val sRem = s.substring(firstDigit)
-        val firstNonDigit = sRem.findIndexOf(!Character.isDigit(_))
-        val sDigits = if (firstNonDigit<0) sRem
-                      else sRem.substring(0,firstNonDigit)
-        java.lang.Long.parseLong(sDigits)
-    }
+    /** Compare file names in our display order, with embedded numbers
+     * in numeric order.  See NaturalOrder. */
+    def compareFileNames(s1:String, s2:String):Int =
+        NaturalOrder.compare(s1,s2)
 
     /** Get the name of the text file which contains the info
      * about the specified image file.
@@ -116,22 +85,31 @@ object FileInfo {
 /** A representation of an image file in a list.
  */
 class FileInfo(
-    index:Int,          //the index of this entry within the containing list
-    pathCount:Int,      //number of path components in the list
-    subdirCount:Int,       //number of subdirectories in the list
-    fileCount:Int,      //number of files in the list
+    private var index:Int,  //the index of this entry within the containing list
+    private var pathCount:Int,  //number of path components in the list
+    private var subdirCount:Int,   //number of subdirectories in the list
+    private var fileCount:Int,  //number of files in the list
     dir:File,           //the directory containing the file
-    val name:String)        //name of the file with the directory
+    val name:String,        //name of the file with the directory
+    knownType:Int)      //the type of the file if the caller knows it, else 0
 {
     import FileInfo._   //get all the stuff from our companion object
 
-    val totalCount = pathCount + subdirCount + fileCount
+    def this(index:Int, pathCount:Int, subdirCount:Int, fileCount:Int,
+            dir:File, name:String) =
+        this(index,pathCount,subdirCount,fileCount,dir,name,0)
+
+    def totalCount = pathCount + subdirCount + fileCount
     val thisFile = new File(dir,if (name==null) "" else name)
 
     //If not a directory, assume it is an image file,
     //until we get around to implementing other stuff.
-    private val fType =          //the type of this entry
-        if (thisFile.isDirectory()) {
+    //We don't look at the file until we need to know, since that can
+    //be slow on network file systems.
+    private lazy val fType =          //the type of this entry
+        if (knownType!=0) {
+            knownType
+        } else if (thisFile.isDirectory()) {
             FileInfo.DIR
         } else if (isOurFileName(name)) {
             FileInfo.MIMPRINT       //our own file
@@ -139,7 +117,7 @@ class FileInfo(
             FileInfo.IMAGE
 
     //The following data is initialized by a call to loadInfo
-    var infoLoaded = false //true after loadInfo has been called
+    @volatile var infoLoaded = false //true after loadInfo has been called
     var text:String = _   //text for the image, from getFileText()
     var info:String = _   //more info for the image, from getFileTextInfo()
     var html:String = _   //html for the image, from getFileTextInfo()
@@ -149,13 +127,55 @@ class FileInfo(
     var icon:ImageIcon = _     //icon for the image,
             //or generic icon for other file types
 
+    private var includeDirDates = false
+
+    //The parts of our info that don't depend on our position in the list
+    private case class InfoParts(fileName:String, sizeStr:String,
+            dateStr:String)
+    private var infoParts:InfoParts = _
+
+    /** Read the info about our file, then build the html and plain text
+     * versions from it.
+     * This may be called from a background thread.  We read the file
+     * before taking our lock, so the list can move us to a new position
+     * while we are doing that.
+     */
     def loadInfo(includeDirDates:Boolean) {
-        text = getFileText()
-        html = getFileTextInfo(true,includeDirDates)
-        info = getFileTextInfo(false,includeDirDates)
-        infoLoaded = true
+        val newText = getFileText()
+        val parts = getInfoParts(includeDirDates)
+        synchronized {
+            this.includeDirDates = includeDirDates
+            text = newText
+            setInfoParts(parts)
+            infoLoaded = true
+        }
+    }
+
+    private def setInfoParts(parts:InfoParts) {
+        infoParts = parts
+        html = formatInfo(infoParts,true)
+        info = formatInfo(infoParts,false)
+    }
+
+    /** Move this entry to a new position in its list.
+     * The position is part of our info text, so we update that if it
+     * has already been loaded. */
+    def setPosition(index:Int, pathCount:Int, subdirCount:Int,
+            fileCount:Int):Unit = synchronized {
+        if (index==this.index && pathCount==this.pathCount &&
+                subdirCount==this.subdirCount && fileCount==this.fileCount)
+            return
+        this.index = index
+        this.pathCount = pathCount
+        this.subdirCount = subdirCount
+        this.fileCount = fileCount
+        if (infoLoaded)
+            setInfoParts(infoParts)
     }
 
+    /** Get the index of this entry within its list. */
+    def getIndex():Int = synchronized { index }
+
     /** Get the File object for this file. */
     def getFile() = thisFile
 
@@ -169,9 +189,7 @@ class FileInfo(
             val textPath = getTextFileNameForImage(path)
             if (textPath==null)
                 return null
-            val f = new File(textPath)
-            val text = FileUtilS.readFile(f)
-            text
+            DirectoryInfo.getText(new File(textPath))
         } catch {
             case ex:FileNotFoundException =>
                 null    //OK if the file is not there
@@ -186,15 +204,18 @@ class FileInfo(
      * @return The info about the image
      */
     def getFileTextInfo(useHtml:Boolean,
-            includeDirDates:Boolean):String = {
+            includeDirDates:Boolean):String =
+        formatInfo(getInfoParts(includeDirDates),useHtml)
+
+    //Get the file name, size and date to go into our info,
+    //or null if we have no file.
+    private def getInfoParts(includeDirDates:Boolean):InfoParts = {
         val path = getPath()
         if (path==null) {
             return null 	//no file, so no info
         }
         val f = new File(path)
 
-        val sb = new StringBuffer()
-
         //Start the with file name
         var fn = f.getName()
         if (fn.equals(".")) {
@@ -207,18 +228,46 @@ class FileInfo(
         }
         else if (fn=="..")
             fn = "Up to Parent"        //TODO i18n
+        if (isDirectory())
+            fn = fn + File.separator
+
+        //Add file size
+        val fileSize:Long = f.length()
+        var fileSizeStr = 
+            if (fileSize>1024*1024*10)	//>10M
+                ""+(fileSize/(1024*1024))+"M"
+            else if (fileSize>1024*10)	//>10K
+                ""+(fileSize/1024)+"K"
+            else
+                ""+fileSize+"B"
+
+        val dateStr =
+            if (includeDirDates || !isDirectory()) {
+                //Add file modification date/time
+                val parent = f.getParentFile
+                DirectoryInfo.formatDate(
+                        if (parent==null) new File(".") else parent,
+                        f.lastModified())
+            } else
+                null
+
+        InfoParts(fn,fileSizeStr,dateStr)
+    }
+
+    //Put together the info text from its parts and our position
+    //in the list.
+    private def formatInfo(parts:InfoParts, useHtml:Boolean):String = {
+        if (parts==null)
+            return null
+        val sb = new StringBuffer()
         if (useHtml) {
             sb.append("<html>")
             sb.append("<b>")
-            sb.append(fn)
-            if (index<pathCount || f.isDirectory())
-                sb.append(File.separator)
+            sb.append(parts.fileName)
             sb.append("</b>")
         } else {
             sb.append("File: ")        //TODO i18n
-            sb.append(fn)
-            if (index<pathCount || f.isDirectory())
-                sb.append(File.separator)
+            sb.append(parts.fileName)
         }
 
         //Add (N of M)
@@ -242,54 +291,17 @@ class FileInfo(
                 sb.append("; File "+fileIndex)  //TBD i18n
         }
 
-        //Add file size
-        val fileSize:Long = f.length()
-        var fileSizeStr = 
-            if (fileSize>1024*1024*10)	//>10M
-                ""+(fileSize/(1024*1024))+"M"
-            else if (fileSize>1024*10)	//>10K
-                ""+(fileSize/1024)+"K"
-            else
-                ""+fileSize+"B"
         sb.append("; ")
-        sb.append(fileSizeStr)
-
-        if (includeDirDates || (index>=pathCount && fType!=DIR)) {
-            //Add file modification date/time
-            val modTimeMillis:Long = f.lastModified()
-            val modDate = new Date(modTimeMillis)
-            val dFmt =
-                    DateFormat.getDateTimeInstance().asInstanceOf[SimpleDateFormat]
-            val tzPath = getTimeZoneFileNameForImage(path)
-            val tzFile = new File(tzPath)
-            if (tzFile.exists()) {
-                try {
-                    //What a hack... the SimpleDateFormat code doesn't
-                    //do the right time-zone calculations, it uses
-                    //TimeZone.getRawOffset, which just gets the first
-                    //offset in the timezone.  We need it to get the
-                    //offset for the specified time.
-                    val tz:TimeZone = new ZoneInfo(tzFile)
-                    val zOff:Int = tz.getOffset(modTimeMillis)
-                    val stz = new SimpleTimeZone(zOff,tz.getID())
-                    val dstStr =
-                        if (tz.inDaylightTime(modDate)) " '(DST)'" else ""
-                    dFmt.setTimeZone(stz)
-                    dFmt.applyPattern(dFmt.toPattern()+" zzzz"+dstStr)
-                } catch {
-                    case ex:IOException =>
-println("IOException reading ZoneInfo: "+ex.getMessage())
-                    //do nothing to change timezone or format
-                }
-            }
-            val dateStr = dFmt.format(modDate)
+        sb.append(parts.sizeStr)
+
+        if (parts.dateStr!=null) {
             if (useHtml) {
                 sb.append("<br><i>")
-                sb.append(dateStr)
+                sb.append(parts.dateStr)
                 sb.append("</i>")
             } else {
                 sb.append("; ")
-                sb.append(dateStr)
+                sb.append(parts.dateStr)
             }
         }
 
@@ -311,28 +323,15 @@ println("IOException reading ZoneInfo: "+ex.getMessage())
         sb.toString()
     }
 
-    /** Get the name of the timezone file for the image.
-     * @param path The path to the image file.
-     * @return The timezone file name, or null if we can't figure it out.
-     */
-    protected def getTimeZoneFileNameForImage(path:String):String = {
-        val sl = path.lastIndexOf(File.separator)
-        val path1 =
-            if (sl<0)
-                "."+File.separator
-            else
-                path.substring(0,sl+1)
-        val tzPath = path1+"TZ"
-        tzPath
-    }
-
     def getPath() = getFile().toString()
 
     /** Set our text field, update the info and html fields. */
     def setText(text:String) {
-        this.text = text
-        html = getFileTextInfo(true,true)
-        info = getFileTextInfo(false,true)
+        val parts = getInfoParts(true)
+        synchronized {
+            this.text = text
+            setInfoParts(parts)
+        }
     }
 
     override def toString():String = {
@@ -0,0 +1,35 @@
+/* FileInfoLoader.scala
+ *
+ * Load the info for the entries in a list on background threads.
+ */
+
+package net.jimmc.mimprint
+
+/** A set of background threads to load the info (size, date and text)
+ * for the entries in a client's list, so that the client never has to
+ * touch the file system while it is drawing the list.
+ * We load the entries nearest the rows the client is displaying first
+ * (see RowLoader), looking as far beyond the visible rows as the number
+ * of visible rows, so that the next page is ready when the user scrolls
+ * to it.  Loading the info is mostly waiting for the disk, so we run
+ * more threads than we have processors.
+ */
+abstract class FileInfoLoader(viewer:SViewer) extends RowLoader(viewer,
+        "FileInfoLoader",Runtime.getRuntime.availableProcessors.max(4),
+        Thread.NORM_PRIORITY - 2,16) {
+
+    protected def scanMargin(first:Int, last:Int):Int = last - first + 1
+
+    protected def needsWork(fi:FileInfo):Boolean = !fi.infoLoaded
+
+    protected def load(fi:FileInfo) = loadInfo(fi)
+
+    protected def loaded(batch:List[FileInfo]) = infoLoaded(batch)
+
+    //Load the info for one entry
+    protected def loadInfo(fileInfo:FileInfo):Unit
+
+    //Notify the client that it should update the display of these
+    //entries in its list.
+    protected def infoLoaded(batch:List[FileInfo]):Unit
+}
@@ -15,98 +15,35 @@ import java.net.URL
 import java.io.File
 import javax.swing.ImageIcon
 
-/** A background thread to load image icons.
+/** A set of background threads to load image icons.
+ * We run one thread per processor, and load the icons nearest the rows
+ * the client is displaying first (see RowLoader).
+ * We only load the icon for an entry once its info has been loaded.
  */
-abstract class IconLoader(viewer:SViewer) extends Thread {
+abstract class IconLoader(viewer:SViewer) extends RowLoader(viewer,
+        "IconLoader",Runtime.getRuntime.availableProcessors,
+        Thread.NORM_PRIORITY - 3,1) {
+    private val scanLimit = 500
+        //how many rows beyond the visible range we look for icons to load
 
-    override def run() {
-//System.out.println("running iconLoader")
-        while (true) {  //keep running until the app exits
-            try {
-                val fileInfos = getFileInfoList()
-                val updatedCount = loadFileInfos(fileInfos)
-                if (updatedCount==0)
-                    waitForMoreIcons()
-            } catch {
-                case ex:Exception =>
-                    viewer.exceptionDialog(ex)
-                    Thread.sleep(10)
-            }
-        }
-    }
+    protected def scanMargin(first:Int, last:Int):Int = scanLimit
 
-    /** Call this from the client to notify us that
-     * we should go look for more images to load.
-     */
-    def moreIcons() {
-        synchronized {
-//System.out.println("moreIcons")
-            this.notify()
-        }
-    }
+    protected def needsWork(fi:FileInfo):Boolean =
+        fi.infoLoaded && fi.icon==null
+            //only once the info is loaded, and only if not already done
 
-    //Wait for the client to tell us we have more work.
-    private def waitForMoreIcons() {
-      synchronized {
-        //Before we wait, run throught the list and make sure there
-        //are not any new icons that snuck in there after our last
-        //pass through the list.
-        val fileInfos = getFileInfoList()
-        if (fileInfos!=null && fileInfos.exists(needsIcon(_)))
-            return     //found one that needs loading
-//System.out.println("waitForMoreIcons")
-        try {
-            this.wait()
-        } catch {
-            case ex:InterruptedException =>
-                println("Wait interrupted")
-        }
-//System.out.println("waitForMoreIcons done")
-      }
+    protected def load(fi:FileInfo) {
+        fi.icon = getFileIcon(fi)
     }
 
-    //Notify the client that it should update the display on
-    //an item in its list.
-    protected def iconLoaded(fileInfos:Array[FileInfo], n:Int):Boolean
-
-    //Get the set of FileInfo objects to work on
-    protected def getFileInfoList():Array[FileInfo]
+    protected def loaded(batch:List[FileInfo]) = batch.foreach(iconLoaded(_))
 
-    //Load all icons that are ready to be loaded
-    private def loadFileInfos(fileInfos:Array[FileInfo]):Int = {
-//System.out.println("loadFileInfos")
-        if (fileInfos==null)
-            return 0
-        var updatedCount = 0
-        for (i <- 0 until fileInfos.length) {
-            val fi = fileInfos(i)
-            if (needsIcon(fi)) {
-                fi.icon = getFileIcon(fi,i)
-                if (!iconLoaded(fileInfos,i)) {
-                    //The list in client changed, don't
-                    //bother loading the rest of these icons
-                    return updatedCount
-                }
-                updatedCount = updatedCount + 1
-            }
-        }
-        updatedCount
-    }
-
-    private def needsIcon(fi:FileInfo):Boolean = {
-        if (fi==null)
-            return false       //that list item not yet visible
-        if (!fi.infoLoaded)
-            return false       //info not yet loaded, it's not ready for us
-        if (fi.icon!=null)
-            return false       //icon already loaded
-//        if (fi.type!=FileInfo.IMAGE && fi.type!=FileInfo.MIMPRINT)
-//            return false       //only load icons for image files and our own files
-        return true
-    }
+    //Notify the client that it should update the display of an
+    //entry in its list.
+    protected def iconLoaded(fileInfo:FileInfo):Unit
 
     //Load the icon for the specified file.
-    private def getFileIcon(fileInfo:FileInfo, index:Int):ImageIcon = {
+    private def getFileIcon(fileInfo:FileInfo):ImageIcon = {
         if (fileInfo.isDirectory())
             return getDirectoryIcon(fileInfo)
         if (fileInfo.getPath().toLowerCase().endsWith(
@@ -145,6 +82,13 @@ abstract class IconLoader(viewer:SViewer) extends Thread {
         if (desc!=null) {
             fileInfo.setText(desc)  //also updates html
         }
+        val image = TemplateCache.getPreview(fileInfo.getFile(),
+                drawLayoutIcon(pageLayout))
+        return new ImageIcon(image)
+    }
+
+    //Draw a picture of the layout the size of an icon
+    private def drawLayoutIcon(pageLayout:PageLayout):Image = {
         val image = new BufferedImage(ImageUtil.ICON_SIZE,
                 ImageUtil.ICON_SIZE,BufferedImage.TYPE_BYTE_INDEXED)
         val g2:Graphics2D = image.createGraphics()
@@ -160,15 +104,23 @@ abstract class IconLoader(viewer:SViewer) extends Thread {
         g2.setColor(Color.black)
         pageLayout.getAreaLayout().paint(g2,null,null,true)
             //paint the layout into the image
-        return new ImageIcon(image)
+        g2.dispose()
+        image
     }
 
     private def getImageFileIcon(fileInfo:FileInfo):ImageIcon = {
+        //If we have seen this image before, use the icon we saved then
+        val stored = ThumbnailStore.get(fileInfo.getFile)
+        if (stored.isDefined)
+            return new ImageIcon(stored.get)
         //val toolkit = viewer.getToolkit()
         val path = fileInfo.getPath()
-        val fullImage = ImageUtil.getImage(viewer,path)
+        val fullImage = ImageUtil.getDisplayImage(viewer,path,0,
+                ImageUtil.ICON_SIZE,ImageUtil.ICON_SIZE)
         val scaledImage = ImageUtil.createScaledImage(fullImage,
                 0,ImageUtil.ICON_SIZE,ImageUtil.ICON_SIZE,path)
-        return new ImageIcon(scaledImage)
+        val iconImage = ImageUtil.toBufferedImage(viewer,scaledImage)
+        ThumbnailStore.put(fileInfo.getFile,iconImage)
+        return new ImageIcon(iconImage)
     }
 }
@@ -5,37 +5,125 @@
 
 package net.jimmc.mimprint
 
+import net.jimmc.util.SizedLruCache
+
 import java.awt.Image
+import java.awt.image.BufferedImage
+import java.io.File
 
+/** A cache of decoded images shared by all of our image views.
+ * Images are keyed by the path, modification time and size of the
+ * file they came from, so a changed file is not served from the cache.
+ * The cache is bounded by the number of bytes in the decoded pixels;
+ * the budget can be set in megabytes with the system property
+ * mimprint.imageCache.mb, and defaults to a quarter of the max heap.
+ */
 object ImageCache {
+    /** Identifies one version of an image file. */
+    case class ImageKey(path:String, modified:Long, length:Long)
+
+    /** Identifies a scaled version of an image file. */
+    case class ScaledKey(src:ImageKey, width:Int, height:Int)
+
+    /** Identifies an image file decoded at a reduced resolution,
+     * using every factor'th pixel in each direction. */
+    case class SubsampledKey(src:ImageKey, factor:Int)
+
+    /** Identifies an image file scaled and rotated for display in an
+     * area of the given size. */
+    case class DisplayKey(src:ImageKey, rotation:Int, width:Int, height:Int)
+
     case class PathImage(path:String, image:Image)
+    case class ScaledImage(path:String,
+            dstWidth:Int, dstHeight:Int, scaledImage:Image)
+
+    val maxBytes:Long = {
+        val mb = System.getProperty("mimprint.imageCache.mb")
+        if (mb!=null)
+            java.lang.Long.parseLong(mb) * 1024 * 1024
+        else
+            Runtime.getRuntime.maxMemory / 4
+    }
 
-    var pathCache:List[PathImage] = Nil
+    //Full-size and scaled images share a single budget so that
+    //whichever kind is being used most gets the memory.
+    private val cache = new SizedLruCache[AnyRef,Image]("ImageCache",maxBytes)
+
+    /** Get the key for the current version of the file at path. */
+    def keyFor(path:String):ImageKey = {
+        val f = new File(path)
+        ImageKey(path,f.lastModified,f.length)
+    }
 
     def getPathImage(path:String):Option[PathImage] =
-        pathCache find (_.path==path)
+        cache.get(keyFor(path)).map(PathImage(path,_))
 
     def cachePathImage(path:String, image:Image) {
-        val pi = PathImage(path, image)
-        pathCache = pi :: (pathCache take 3)     //limit size to 4
+        cache.put(keyFor(path),image,imageBytes(image))
     }
 
+    //Get a reduced-resolution decoding of the given image file from
+    //our cache, if there.
+    def getSubsampledImage(path:String, factor:Int):Option[Image] =
+        cache.get(SubsampledKey(keyFor(path),factor))
 
-    case class ScaledImage(srcImage:Image,
-            dstWidth:Int, dstHeight:Int, scaledImage:Image)
-
-    var scaledCache:List[ScaledImage] = Nil
+    def cacheSubsampledImage(path:String, factor:Int, image:Image) {
+        cache.put(SubsampledKey(keyFor(path),factor),image,imageBytes(image))
+    }
 
-    //Get an scaled version of the given image file from our cache, if there.
-    def getScaledImage(srcImage:Image, dstWidth:Int, dstHeight:Int):
+    //Get a scaled version of the given image file from our cache, if there.
+    def getScaledImage(path:String, dstWidth:Int, dstHeight:Int):
                 Option[ScaledImage] =
-        scaledCache find (si =>
-                    si.srcImage==srcImage &&
-                    si.dstWidth==dstWidth && si.dstHeight==dstHeight)
+        cache.get(ScaledKey(keyFor(path),dstWidth,dstHeight)).map(
+                ScaledImage(path,dstWidth,dstHeight,_))
 
-    def cacheScaledImage(srcImage:Image, dstWidth:Int, dstHeight:Int,
+    def cacheScaledImage(path:String, dstWidth:Int, dstHeight:Int,
             scaledImage:Image) {
-        val si = ScaledImage(srcImage, dstWidth, dstHeight, scaledImage)
-        scaledCache = si :: (scaledCache take 3)     //limit size to 4
+        cache.put(ScaledKey(keyFor(path),dstWidth,dstHeight),
+                scaledImage,4L*dstWidth*dstHeight)
+    }
+
+    //Get a scaled and rotated version of the given image file from our
+    //cache, if there.
+    def getDisplayImage(path:String, rotation:Int,
+            displayWidth:Int, displayHeight:Int):Option[Image] =
+        cache.get(DisplayKey(keyFor(path),rotation,displayWidth,displayHeight))
+
+    def cacheDisplayImage(path:String, rotation:Int,
+            displayWidth:Int, displayHeight:Int, image:Image) {
+        cache.put(DisplayKey(keyFor(path),rotation,displayWidth,displayHeight),
+                image,imageBytes(image))
+    }
+
+    /** Drop all cached versions of the image file at path. */
+    def invalidate(path:String) {
+        cache.removeIf(_ match {
+            case k:ImageKey => k.path==path
+            case k:ScaledKey => k.src.path==path
+            case k:SubsampledKey => k.src.path==path
+            case k:DisplayKey => k.src.path==path
+            case _ => false
+        })
+    }
+
+    /** Get a summary of the cache size and hit, miss and eviction counts. */
+    def stats:String = cache.toString
+
+    /** Estimate the number of bytes used by the pixels of an image. */
+    def imageBytes(image:Image):Long = {
+        image match {
+            case bi:BufferedImage =>
+                val db = bi.getRaster.getDataBuffer
+                db.getSize.toLong * db.getNumBanks *
+                    (java.awt.image.DataBuffer.getDataTypeSize(
+                            db.getDataType) / 8)
+            case _ =>
+                val w = image.getWidth(null)
+                val h = image.getHeight(null)
+                if (w<0 || h<0)
+                    1024L * 1024    //not loaded yet, guess
+                else
+                    4L * w * h      //assume int pixels
+        }
     }
 }
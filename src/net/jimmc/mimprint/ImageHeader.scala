@@ -0,0 +1,138 @@
+/* ImageHeader.scala
+ *
+ * Read image dimensions from the file header without decoding the image.
+ */
+
+package net.jimmc.mimprint
+
+import net.jimmc.util.SizedLruCache
+
+import java.io.BufferedInputStream
+import java.io.DataInputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.InputStream
+import java.io.IOException
+
+/** Get the width and height of JPEG, PNG and GIF files by reading
+ * only as much of the file as it takes to find them:
+ * the SOF segment of a JPEG, the IHDR chunk of a PNG,
+ * or the logical screen descriptor of a GIF.
+ * Results are cached by path, modification time and file size.
+ */
+object ImageHeader {
+    private val cache = new SizedLruCache[ImageCache.ImageKey,(Int,Int)](
+            "ImageHeader",20000)
+
+    /** Get the (width,height) of the image file, or None if we can't
+     * tell from its header. */
+    def getSize(path:String):Option[(Int,Int)] = {
+        val key = ImageCache.keyFor(path)
+        val cached = cache.get(key)
+        if (cached.isDefined)
+            return cached
+        val size = readSize(new File(path))
+        size.foreach(cache.put(key,_,1))
+        size
+    }
+
+    /** Read the size of the image from the file. */
+    def readSize(f:File):Option[(Int,Int)] = {
+        val in = try {
+            new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(f),1024))
+        } catch {
+            case ex:IOException => return None
+        }
+        try {
+            readSize(in)
+        } catch {
+            case ex:IOException => None     //includes EOFException
+        } finally {
+            in.close()
+        }
+    }
+
+    /** Read the size of the image from the stream. */
+    def readSize(in:DataInputStream):Option[(Int,Int)] = {
+        val b0 = in.readUnsignedByte
+        val b1 = in.readUnsignedByte
+        if (b0==0xff && b1==0xd8)
+            readJpegSize(in)
+        else if (b0==0x89 && b1=='P')
+            readPngSize(in)
+        else if (b0=='G' && b1=='I')
+            readGifSize(in)
+        else
+            None
+    }
+
+    //We have read the SOI marker, look for the first SOFn marker
+    private def readJpegSize(in:DataInputStream):Option[(Int,Int)] = {
+        while (true) {
+            var b = in.readUnsignedByte
+            if (b!=0xff)
+                return None     //not at a marker, bad file
+            while (b==0xff)
+                b = in.readUnsignedByte   //skip fill bytes
+            val marker = b
+            if (marker==0xd8 || marker==0x01 ||
+                    (marker>=0xd0 && marker<=0xd7)) {
+                //standalone marker, no length
+            } else if (marker==0xd9 || marker==0xda) {
+                return None     //end of image or start of scan, no SOF
+            } else {
+                val length = in.readUnsignedShort
+                if (marker>=0xc0 && marker<=0xcf &&
+                        marker!=0xc4 && marker!=0xc8 && marker!=0xcc) {
+                    in.readUnsignedByte           //sample precision
+                    val height = in.readUnsignedShort
+                    val width = in.readUnsignedShort
+                    return Some((width,height))
+                }
+                skipFully(in,length-2)
+            }
+        }
+        None    //not reached
+    }
+
+    //We have read the first two bytes of the signature
+    private def readPngSize(in:DataInputStream):Option[(Int,Int)] = {
+        val sig = Array(0x4e,0x47,0x0d,0x0a,0x1a,0x0a)  //rest of signature
+        if (sig.exists(_ != in.readUnsignedByte))
+            return None
+        in.readInt                      //chunk length
+        if (in.readInt!=0x49484452)     //"IHDR"
+            return None
+        val width = in.readInt
+        val height = in.readInt
+        Some((width,height))
+    }
+
+    //We have read "GI"
+    private def readGifSize(in:DataInputStream):Option[(Int,Int)] = {
+        val sig = new Array[Byte](4)
+        in.readFully(sig)
+        val sigStr = new String(sig,"US-ASCII")
+        if (sigStr!="F87a" && sigStr!="F89a")
+            return None
+        //Logical screen descriptor, little-endian
+        val width = in.readUnsignedByte | (in.readUnsignedByte << 8)
+        val height = in.readUnsignedByte | (in.readUnsignedByte << 8)
+        Some((width,height))
+    }
+
+    private def skipFully(in:InputStream, n:Int) {
+        var remaining = n.toLong
+        while (remaining>0) {
+            val skipped = in.skip(remaining)
+            if (skipped<=0) {
+                if (in.read()<0)
+                    throw new EOFException()
+                remaining = remaining - 1
+            } else
+                remaining = remaining - skipped
+        }
+    }
+}
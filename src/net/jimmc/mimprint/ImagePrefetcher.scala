@@ -0,0 +1,121 @@
+/* ImagePrefetcher.scala
+ *
+ * Prepare the images the user is likely to look at next.
+ */
+
+package net.jimmc.mimprint
+
+import java.awt.Component
+import java.io.File
+
+/** A background thread that scales and rotates images ahead of the one
+ * being displayed in a component, leaving the results in the ImageCache
+ * where ImageUtil.getTransformedImage will find them.
+ * We look at the recent selections to decide which way the user is
+ * moving through the list, and prepare more images in that direction
+ * than in the other.
+ * Each call to select replaces any work not yet started, so when
+ * the user jumps to another part of the list we don't waste time on
+ * images around the old position.
+ * The display never waits for us: if it wants an image we have not yet
+ * finished, it prepares its own copy.
+ */
+class ImagePrefetcher(comp:Component) {
+    val AHEAD = 3       //number of images to prepare in the current direction
+    val BEHIND = 1      //number of images to prepare in the other direction
+
+    private val lock = new Object
+    private var pending:List[PrefetchItem] = Nil
+    private var lastIndex = -1
+    private var direction = 1
+    private var started = false
+
+    private case class PrefetchItem(path:String, rot:Int,
+            width:Int, height:Int)
+
+    /** Note that the item at index in the list has been selected,
+     * and start preparing the images around it.
+     */
+    def select(playList:PlayList, index:Int) {
+        val width = comp.getWidth
+        val height = comp.getHeight
+        lock.synchronized {
+            if (index>=0 && lastIndex>=0 && index!=lastIndex)
+                direction = if (index>lastIndex) 1 else -1
+            lastIndex = index
+            pending =
+                if (index<0 || playList==null || width<=0 || height<=0) Nil
+                else {
+                    val ahead = (1 to AHEAD).map(index + direction*_)
+                    val behind = (1 to BEHIND).map(index - direction*_)
+                    //Interleave so the nearest ones in each direction
+                    //come first.
+                    val order = ahead.take(BEHIND).zip(behind).flatMap(
+                            p => List(p._1,p._2)) ++ ahead.drop(BEHIND)
+                    order.toList.flatMap(i =>
+                            prefetchItem(playList,i,width,height))
+                }
+            if (!started)
+                start()
+            lock.notifyAll()
+        }
+    }
+
+    /** Forget any pending work. */
+    def cancel() {
+        lock.synchronized {
+            pending = Nil
+            lastIndex = -1
+        }
+    }
+
+    private def prefetchItem(playList:PlayList, index:Int,
+            width:Int, height:Int):Option[PrefetchItem] = {
+        if (index<0 || index>=playList.size)
+            return None
+        val item = playList.getItem(index)
+        if (item.isEmpty)
+            return None
+        if (item.fileName.endsWith("."+FileInfo.MIMPRINT_EXTENSION))
+            return None         //ignore non-image files
+        val path = new File(item.baseDir,item.fileName).getPath
+        Some(PrefetchItem(path,item.rotFlag,width,height))
+    }
+
+    private def start() {
+        started = true
+        val t = new Thread("ImagePrefetcher") {
+            override def run() {
+                while (true) {  //keep running until the app exits
+                    val p = waitForWork()
+                    try {
+                        ImageUtil.getTransformedImage(comp,p.path,p.rot,
+                                p.width,p.height)
+                    } catch {
+                        //The user has not asked for this image yet, so we
+                        //just skip it; if they do go to it, the error is
+                        //reported then.
+                        case ex:Exception =>
+                            println("Can't prefetch "+p.path+": "+ex)
+                    }
+                }
+            }
+        }
+        t.setDaemon(true)
+        t.setPriority(Thread.NORM_PRIORITY - 2)
+        t.start()
+    }
+
+    //Wait until there is an image to prepare, and take it off the list.
+    //Since select replaces the list, we only ever take work for
+    //the most recent selection.
+    private def waitForWork():PrefetchItem = {
+        lock.synchronized {
+            while (pending.isEmpty)
+                lock.wait()
+            val p = pending.head
+            pending = pending.tail
+            p
+        }
+    }
+}
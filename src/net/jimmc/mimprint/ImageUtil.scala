@@ -13,7 +13,11 @@ import java.awt.geom.AffineTransform
 import java.awt.Graphics2D
 import java.awt.Image
 import java.awt.image.BufferedImage
+import java.awt.image.ImageObserver
 import java.awt.MediaTracker
+import java.io.File
+import java.io.IOException
+import javax.imageio.ImageIO
 
 /** Misceallaneous image utility methods. */
 object ImageUtil {
@@ -22,11 +26,14 @@ object ImageUtil {
 
     //Get an image for the specified file from our cache,
     //or create it if it is not in our cache.
+    //The image is completely loaded before we return it so that the
+    //cache knows how much memory it is using.
     def getImage(comp:Component, path:String):Image = {
         val cp = ImageCache.getPathImage(path)
         if (cp.isDefined)
             return cp.get.image
         val im = createImage(comp, path)
+        loadCompleteImage(comp,im)
         ImageCache.cachePathImage(path,im)
         im
     }
@@ -36,6 +43,104 @@ object ImageUtil {
         toolkit.createImage(path)
     }
 
+    /** Get an image for the specified file suitable for displaying at
+     * the given size and rotation.
+     * If the file is much bigger than the display size, we decode it at
+     * a reduced resolution by having the image reader skip pixels,
+     * which is much faster and uses much less memory than decoding
+     * the full image and then scaling it down.
+     * The returned image is at least big enough to fill the display
+     * size when scaled to fit, so the caller should still call
+     * createScaledImage or scaleAndRotate to get the exact size.
+     * If the file format does not support this, or the display size
+     * is not known, we return the full image as from getImage.
+     */
+    def getDisplayImage(comp:Component, path:String, rotation:Int,
+            displayWidth:Int, displayHeight:Int):Image = {
+        if (displayWidth<=0 || displayHeight<=0)
+            return getImage(comp,path)
+        val xy = (rotation==1 || rotation==3 || rotation== -1)
+        val (dw, dh) =
+            if (xy) (displayHeight, displayWidth)
+            else (displayWidth, displayHeight)
+        readSubsampledImage(path,dw,dh) getOrElse getImage(comp,path)
+    }
+
+    /** Get an image for the specified file suitable for displaying
+     * in the given component at the given rotation. */
+    def getDisplayImage(comp:Component, path:String, rotation:Int):Image =
+        getDisplayImage(comp,path,rotation,comp.getWidth,comp.getHeight)
+
+    //Decode the image using an ImageIO reader with source subsampling.
+    //Return None if we can't read this file that way.
+    private def readSubsampledImage(path:String,
+            displayWidth:Int, displayHeight:Int):Option[Image] = {
+        val iis = try {
+            ImageIO.createImageInputStream(new File(path))
+        } catch {
+            case ex:IOException => null
+        }
+        if (iis==null)
+            return None
+        try {
+            val readers = ImageIO.getImageReaders(iis)
+            if (!readers.hasNext)
+                return None
+            val reader = readers.next
+            try {
+                reader.setInput(iis,true,true)
+                val factor = subsampleFactor(reader.getWidth(0),
+                        reader.getHeight(0),displayWidth,displayHeight)
+                val cached = ImageCache.getSubsampledImage(path,factor)
+                if (cached.isDefined)
+                    return cached
+                val param = reader.getDefaultReadParam
+                param.setSourceSubsampling(factor,factor,0,0)
+                val image = reader.read(0,param)
+                ImageCache.cacheSubsampledImage(path,factor,image)
+                Some(image)
+            } finally {
+                reader.dispose()
+            }
+        } catch {
+            case ex:Exception =>
+                None    //some formats (e.g. CMYK jpeg) need the old way
+        } finally {
+            iis.close()
+        }
+    }
+
+    /** Get the largest subsampling factor for an image of size
+     * srcWidth by srcHeight that still leaves enough pixels to fill
+     * an area of displayWidth by displayHeight when scaled to fit.
+     */
+    def subsampleFactor(srcWidth:Int, srcHeight:Int,
+            displayWidth:Int, displayHeight:Int):Int = {
+        val xFactor = srcWidth / displayWidth
+        val yFactor = srcHeight / displayHeight
+        val factor = if (xFactor>yFactor) xFactor else yFactor
+        if (factor<1) 1 else factor
+    }
+
+    /** Get a BufferedImage with the contents of the given image.
+     * If the image is already a BufferedImage, it is returned as is.
+     */
+    def toBufferedImage(comp:Component, image:Image):BufferedImage = {
+        image match {
+            case bi:BufferedImage => bi
+            case _ =>
+                loadCompleteImage(comp,image)
+                val (w, h) = getImageSize(image)
+                val bi = new BufferedImage(w,h,BufferedImage.TYPE_INT_RGB)
+                val g2 = bi.createGraphics()
+                g2.setColor(Color.white)
+                g2.fillRect(0,0,w,h)
+                g2.drawImage(image,0,0,null)
+                g2.dispose()
+                bi
+        }
+    }
+
     /** Create a transparent image the size of one of our image icons,
      *  suitable for dragging.
      */
@@ -107,6 +212,38 @@ object ImageUtil {
     def loadCompleteImage(comp:Component, image:Image):Unit =
         loadCompleteImage(new MediaTracker(comp), image)
 
+    /** Get the image in the file scaled and rotated to fit into an
+     * area of the given size, from our cache if it is there.
+     * The result is cached so that an image prepared ahead of time
+     * (see ImagePrefetcher) can be displayed without any more work.
+     */
+    def getTransformedImage(comp:Component, path:String, rot:Int,
+            displayWidth:Int, displayHeight:Int):Image = {
+        val cached = ImageCache.getDisplayImage(path,rot,
+                displayWidth,displayHeight)
+        if (cached.isDefined)
+            return cached.get
+        val im = getDisplayImage(comp,path,rot,displayWidth,displayHeight)
+        val si = createScaledImage(im,rot,displayWidth,displayHeight,path)
+        loadCompleteImage(comp,si)
+        val ri = createRotatedImage(si,rot,comp)
+        loadCompleteImage(comp,ri)
+        ImageCache.cacheDisplayImage(path,rot,displayWidth,displayHeight,ri)
+        ri
+    }
+
+    /** Like getTransformedImage, but neither the scaled nor the final
+     * image is cached, for one-off images such as when printing. */
+    def createTransformedImage(comp:Component, path:String, rot:Int,
+            displayWidth:Int, displayHeight:Int):Image = {
+        val im = getDisplayImage(comp,path,rot,displayWidth,displayHeight)
+        val si = createScaledImage(im,rot,displayWidth,displayHeight,null)
+        loadCompleteImage(comp,si)
+        val ri = createRotatedImage(si,rot,comp)
+        loadCompleteImage(comp,ri)
+        ri
+    }
+
     def scaleAndRotate(srcImage:Image, rot:Int, path:String,
             comp:Component):Image = {
         val si = createScaledImage(srcImage,rot,comp,path)
@@ -145,14 +282,17 @@ object ImageUtil {
         val dstHeight = (srcHeight * scale).asInstanceOf[Int]
 
         //See if it is cached
-        val si = ImageCache.getScaledImage(sourceImage,dstWidth,dstHeight)
-        if (si.isDefined)
-            return si.get.scaledImage
+        if (path!=null) {
+            val si = ImageCache.getScaledImage(path,dstWidth,dstHeight)
+            if (si.isDefined)
+                return si.get.scaledImage
+        }
 
         //Not cached, create it then cache it
         val scaledImage = sourceImage.getScaledInstance(
                     dstWidth,dstHeight,Image.SCALE_FAST)
-        ImageCache.cacheScaledImage(sourceImage,dstWidth,dstHeight,scaledImage)
+        if (path!=null)
+            ImageCache.cacheScaledImage(path,dstWidth,dstHeight,scaledImage)
         scaledImage
     }
 
@@ -160,9 +300,12 @@ object ImageUtil {
         if (((rot+4)%4)==0)
             return sourceImage
         val (w, h) = getImageSize(sourceImage)
-        val dstImage = comp.createImage(
-                if (rot%2==0) w else h,  if (rot%2==0) h else w)
-        val dstG2 = dstImage.getGraphics.asInstanceOf[Graphics2D]
+        //We use a BufferedImage rather than comp.createImage so that
+        //this works for components with no peer, as when we are headless.
+        val dstImage = new BufferedImage(
+                if (rot%2==0) w else h,  if (rot%2==0) h else w,
+                BufferedImage.TYPE_INT_RGB)
+        val dstG2 = dstImage.createGraphics()
         var transform:AffineTransform = null
         ((rot+4)%4) match {
             case 1 => transform = new AffineTransform(
@@ -178,19 +321,55 @@ object ImageUtil {
         dstImage
     }
 
+    /** Get the size of an image, waiting for it to be known if the
+     * image is still loading. */
     def getImageSize(sourceImage:Image):(Int,Int) = {
-        var waitCount = 0
-        while (sourceImage.getWidth(null)<0 || sourceImage.getHeight(null)<0) {
-            //THe image has not yet started loading, so we don't
-            //know it's size.  Wait just a bit.
-            waitCount = waitCount + 1
-            if (waitCount > 100)
-                throw new RuntimeException("Timed out loading image")
-            try { Thread.sleep(100) } catch { case _ => } //ignore errors here
+        sourceImage match {
+            case bi:BufferedImage => return (bi.getWidth, bi.getHeight)
+            case _ =>
+        }
+        val observer = new SizeObserver
+        observer.synchronized {
+            val deadline = System.currentTimeMillis + 10000
+            var w = sourceImage.getWidth(observer)
+            var h = sourceImage.getHeight(observer)
+            while (w<0 || h<0) {
+                //The image has not yet started loading, so we don't
+                //know its size.  Wait until the observer tells us.
+                if (observer.failed)
+                    throw new RuntimeException("Error loading image")
+                val remaining = deadline - System.currentTimeMillis
+                if (remaining<=0)
+                    throw new RuntimeException("Timed out loading image")
+                observer.wait(remaining)
+                w = sourceImage.getWidth(observer)
+                h = sourceImage.getHeight(observer)
+            }
+            (w, h)
+        }
+    }
+
+    //Wakes up getImageSize when the width and height become available
+    private class SizeObserver extends ImageObserver {
+        var failed = false
+
+        def imageUpdate(img:Image, flags:Int,
+                x:Int, y:Int, width:Int, height:Int):Boolean = synchronized {
+            if ((flags & (ImageObserver.ERROR|ImageObserver.ABORT))!=0)
+                failed = true
+            notifyAll()
+            val sizeFlags = ImageObserver.WIDTH|ImageObserver.HEIGHT
+            !failed && (flags & sizeFlags)!=sizeFlags
         }
-        (sourceImage.getWidth(null), sourceImage.getHeight(null))
     }
 
+    /** Get the size of the image in a file.
+     * We read the size from the file header when we can, so this is fast;
+     * if the header is not one we understand, we load the image.
+     */
+    def getImageSize(comp:Component, path:String):(Int,Int) =
+        ImageHeader.getSize(path) getOrElse getImageSize(getImage(comp,path))
+
     /** Given an area of specified size in user space, scale it to fit into
      * the given window space, and translate it to center it top/bottom or
      * left/right for whichever dimension is smaller.
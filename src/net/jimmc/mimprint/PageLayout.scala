@@ -14,8 +14,6 @@ import java.io.File
 import java.io.PrintWriter
 import java.text.MessageFormat
 import java.util.Stack
-import javax.xml.parsers.SAXParser
-import javax.xml.parsers.SAXParserFactory
 
 import org.xml.sax.Attributes
 import org.xml.sax.helpers.DefaultHandler
@@ -148,20 +146,14 @@ class PageLayout(app:SResources) {
         pw.println("</page>")
     }
 
-    /** Read in the specified layout template. */
+    /** Read in the specified layout template.
+     * The file is only parsed the first time; after that we build our
+     * layout from what the TemplateCache saved from the parse.
+     */
     def loadLayoutTemplate(f:File) {
-        var parser:SAXParser = null
-        try {
-            parser = SAXParserFactory.newInstance().newSAXParser()
-                //TODO - create factory only once
-        } catch {
-            case ex:Exception =>
-                throw new RuntimeException("Exception creating SAXParser",ex)
-        }
-//System.out.println("Created SAXParser")
         val handler:DefaultHandler = new PageLayoutHandler()
         try {
-            parser.parse(f,handler)
+            TemplateCache.load(f,handler)
         } catch {
             case ex:Exception => //SAXException, IOException
                 throw new RuntimeException("Error parsing xml",ex)
@@ -0,0 +1,148 @@
+/* PagePreparer.scala
+ *
+ * Prepare the images for all of the areas of a page at once.
+ */
+
+package net.jimmc.mimprint
+
+import java.awt.Component
+import java.awt.Graphics2D
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
+
+import scala.collection.mutable.ArrayBuffer
+
+/** A pool of threads that reads, scales and rotates the images for all of
+ * the image areas of a page at the same time, rather than one area after
+ * the other.  This is mostly decoding and scaling, so we use one thread
+ * per processor.
+ * The prepared images are left in the ImageCache, so while one page is
+ * being printed we can prepare the next one, and printing it only has
+ * to draw the images.
+ */
+object PagePreparer {
+    private val threadCount = Runtime.getRuntime.availableProcessors
+    private val executor = Executors.newFixedThreadPool(threadCount,
+        new ThreadFactory() {
+            private var n = 0
+            def newThread(r:Runnable):Thread = synchronized {
+                val t = new Thread(r,"PagePreparer-"+n)
+                n = n + 1
+                t.setDaemon(true)
+                t.setPriority(Thread.NORM_PRIORITY - 1)
+                t
+            }
+        })
+
+    //Work for a page we are preparing ahead of time
+    private var lookahead:List[Future[PreparedImage]] = Nil
+
+    /** Prepare the images for the page of layout that starts at index
+     * start in the list, and display them in their areas.
+     * Areas past the end of the list, or with an empty item, are cleared.
+     */
+    def displayPage(layout:AreaLayout, list:PlayList, start:Int,
+            comp:Component) {
+        cancelLookahead()       //the page on the screen comes first
+        val work = for ((area, item) <- pageItems(layout,list,start)
+                if area.needsImage(item)) yield {
+            if (item==null) {
+                area.unsetImage()
+                None
+            } else
+                Some((area, submit(area,item,comp)))
+        }
+        for (Some((area, f)) <- work)
+            area.setPreparedImage(waitFor(f))
+    }
+
+    /** Prepare the images for printing the page of layout that starts at
+     * index start in the list into g2, and wait until they are all ready.
+     * Areas that will print straight from the file are skipped.
+     */
+    def preparePage(layout:AreaLayout, list:PlayList, start:Int,
+            comp:Component, g2:Graphics2D) {
+        //Any lookahead work is probably for this page, so we leave it
+        //running and pick up its results from the ImageCache.
+        submitPage(layout,list,start,comp,g2).foreach(waitFor(_))
+    }
+
+    /** Start preparing the images for printing the page of layout that
+     * starts at index start in the list into g2, without waiting for them.
+     * This replaces any earlier lookahead work not yet started.
+     */
+    def prefetchPage(layout:AreaLayout, list:PlayList, start:Int,
+            comp:Component, g2:Graphics2D) {
+        cancelLookahead()
+        val work = submitPage(layout,list,start,comp,g2)
+        synchronized { lookahead = work }
+        //Errors are ignored here, the user will see them when the page
+        //is printed.
+    }
+
+    private def cancelLookahead() {
+        val work = synchronized {
+            val w = lookahead
+            lookahead = Nil
+            w
+        }
+        work.foreach(_.cancel(false))
+    }
+
+    private def submitPage(layout:AreaLayout, list:PlayList, start:Int,
+            comp:Component, g2:Graphics2D):List[Future[PreparedImage]] = {
+        for ((area, item) <- pageItems(layout,list,start)
+                if item!=null && !area.printsFromFile(g2,comp))
+            yield submit(area,item,comp)
+    }
+
+    private def submit(area:AreaImageLayout, item:PlayItem,
+            comp:Component):Future[PreparedImage] = {
+        executor.submit(new Callable[PreparedImage] {
+            def call():PreparedImage = area.prepareImage(item,comp)
+        })
+    }
+
+    /** Wait for the result of work from an executor.  If the work threw
+     * an exception, throw it here, wrapped in a RuntimeException if it
+     * was not already one. */
+    private[mimprint] def waitFor[T](f:Future[T]):T = {
+        try {
+            f.get()
+        } catch {
+            case ex:ExecutionException =>
+                ex.getCause match {
+                    case rex:RuntimeException => throw rex
+                    case cause => throw new RuntimeException(cause)
+                }
+        }
+    }
+
+    //Get the image areas of the layout, in the order in which they take
+    //items from the list, along with the item for each one, or null if
+    //the area should be empty.
+    private def pageItems(layout:AreaLayout, list:PlayList,
+            start:Int):List[(AreaImageLayout,PlayItem)] = {
+        val areas = layout match {
+            case img:AreaImageLayout => List(img)
+            case _ =>
+                val aa = new ArrayBuffer[AreaLayout]
+                layout.retrieveAreaList(aa)
+                aa.toList.flatMap(_ match {
+                    case img:AreaImageLayout => List(img)
+                    case _ => Nil
+                })
+        }
+        areas.zipWithIndex.map { case (area, n) =>
+            val idx = start + n
+            val item = if (idx < list.size) list.getItem(idx) else null
+            if (item==null || item.fileName==null || item.fileName=="")
+                (area, null)
+            else
+                (area, item)
+        }
+    }
+}
@@ -9,6 +9,8 @@ import net.jimmc.util.FileUtilS
 
 import java.io.File
 import java.io.PrintWriter
+import java.lang.ref.WeakReference
+import java.util.WeakHashMap
 
 import scala.collection.mutable.ListBuffer
 
@@ -16,6 +18,9 @@ import scala.collection.mutable.ListBuffer
  * In addition to keeping information about the playable item,
  * we also store the text, such as comments, that preceeds the item
  * in the playlist file.
+ * A playlist may have hundreds of thousands of items, so we keep them
+ * small: items rebased with usingBase or usingSelfBase share one File
+ * for each base directory rather than each making its own.
  */
 class PlayItem(
         val comments:List[String],  //comment lines preceding our data
@@ -67,13 +72,12 @@ class PlayItem(
             sb.append(fileName)
             if (rotFlag!=0) {
                 sb.append(";")
-                val rStr = rotStrs((rotFlag+1)%4)
+                val rStr = PlayItem.rotStrs((rotFlag+1)%4)
                 sb.append(rStr)
             }
             sb.toString()
         }
     }
-    private val rotStrs = Array( "-r", "", "+r", "+rr" )
 
     def getRotFlag() = rotFlag
     def getFileName() = fileName
@@ -91,13 +95,14 @@ class PlayItem(
         if (pathFor(newBase)==pathFor(baseDir))
             this
         else if (fileName==null)
-            new PlayItem(comments,newBase,null,rotFlag)
+            new PlayItem(comments,PlayItem.internDir(newBase),null,rotFlag)
         else {
             val path = FileUtilS.collapseRelative(
                     (new File(baseDir,fileName)).getPath())
                 //Put together base and file, collapse internal ".." elements
             val relativePath = FileUtilS.relativeTo(path, newBase)
-            new PlayItem(comments,newBase,relativePath,rotFlag)
+            new PlayItem(comments,PlayItem.internDir(newBase),
+                    relativePath,rotFlag)
         }
     }
 
@@ -115,6 +120,31 @@ class PlayItem(
 }
 
 object PlayItem {
+    private val rotStrs = Array( "-r", "", "+r", "+rr" )
+
+    //The base directories given to usingBase, so that the items it makes
+    //with equal base directories share one File.  The Files are weakly
+    //referenced so that a directory is dropped when no items use it.
+    private val dirs = new WeakHashMap[File,WeakReference[File]]
+
+    private val noDir = new File("")
+
+    //Get the shared File equal to dir.
+    private def internDir(dir:File):File = {
+        if (dir==null)
+            return null
+        dirs.synchronized {
+            val ref = dirs.get(dir)
+            val shared = if (ref==null) null else ref.get
+            if (shared!=null)
+                shared
+            else {
+                dirs.put(dir,new WeakReference(dir))
+                dir
+            }
+        }
+    }
+
     /** Create an item from a list of strings.
      * The last string must be a final line as determined by isFinalLine,
      * and none of the preceding lines may be a final line.
@@ -209,7 +239,7 @@ object PlayItem {
 
     /** Create an empty item. */
     def emptyItem():PlayItem = {
-        new PlayItem(Nil,new File(""),null,0)
+        new PlayItem(Nil,noDir,null,0)
     }
 
     /** True if this line is a comment line.
@@ -5,24 +5,31 @@
 
 package net.jimmc.mimprint
 
+import net.jimmc.util.PersistentSeq
 import net.jimmc.util.StandardUi
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.concurrent.atomic.AtomicLong
 
 import scala.collection.mutable.ArrayBuffer
-import scala.collection.mutable.ListBuffer
-import scala.util.Sorting
 
-/** A playlist of images.  Immutable. */
+/** A playlist of images.  Immutable.
+ * The items are kept in a PersistentSeq, so the editing methods that
+ * produce a new PlayList share most of their storage with the old one.
+ * Each PlayList gets a version number when it is created, higher than
+ * that of any PlayList created before it.  Two PlayLists are equal
+ * only if they have the same version, so the result of an edit is
+ * never equal to the list it was made from.
+ */
 class PlayList(
         val ui:StandardUi,
         val baseDir:File,
-        private val items:Array[PlayItem],
+        private val items:PersistentSeq[PlayItem],
         private val comments:List[String]
             //Header comments for the whole file
         ) {
@@ -30,22 +37,30 @@ class PlayList(
     if (items==null)
         throw new NullPointerException("PlayList items must not be null")
 
+    def this(ui:StandardUi, baseDir:File, items:Array[PlayItem],
+            comments:List[String]) =
+        this(ui,baseDir,PersistentSeq(items),comments)
+
+    val version:Long = PlayList.nextVersion()
+
     override def equals(that:Any):Boolean = {
         that match {
-        case other:PlayList =>
-            if (baseDir==null || other.baseDir==null) {
-		if (baseDir!=other.baseDir)
-		    return false	//one was null but not the other
-	    } else if (baseDir.getPath!=other.baseDir.getPath)
-                return false
-            return items==other.items
+        case other:PlayList => version==other.version
         case _ => false
         }
     }
 
+    override def hashCode():Int = (version ^ (version>>>32)).toInt
+
+    /** Create a PlayList with the same contents as ours and a new version.
+     * The tracker uses this when it adopts a list that was created
+     * before its current list, such as a prefetched one, so that
+     * its versions always increase. */
+    def newVersion():PlayList = new PlayList(ui,baseDir,items,comments)
+
     //Create a new PlayList containing the same items as ours plus the new item
     def addItem(item:PlayItem):PlayList = {
-        val newItems = items ++ Array(item.usingSelfBase())
+        val newItems = items.append(item.usingSelfBase())
         new PlayList(ui,baseDir,newItems,comments)
     }
 
@@ -53,13 +68,7 @@ class PlayList(
     //the specified index.  All items which previous had the same or
     //higher index are moved up one.
     def insertItem(itemIndex:Int, item:PlayItem): PlayList = {
-        val newItems:Array[PlayItem] = Array.fill(items.length+1)(null)
-        if (itemIndex>0)
-            Array.copy(items,0,newItems,0,itemIndex)
-        val n = items.length - itemIndex    //number of items after it to move
-        if (n>0)
-            Array.copy(items,itemIndex,newItems,itemIndex+1,n)
-        newItems(itemIndex) = item.usingSelfBase()
+        val newItems = items.insert(itemIndex,item.usingSelfBase())
         new PlayList(ui,baseDir,newItems,comments)
     }
 
@@ -67,30 +76,22 @@ class PlayList(
     //the specified index.  All items which previously had a
     //higher index are moved down one.
     def removeItem(itemIndex:Int): PlayList = {
-        val newItems:Array[PlayItem] = Array.fill(items.length-1)(null)
-        if (itemIndex>0)
-            Array.copy(items,0,newItems,0,itemIndex)
-        val n = items.length - itemIndex - 1  //number of items after it to move
-        if (n>0)
-            Array.copy(items,itemIndex+1,newItems,itemIndex,n)
+        val newItems = items.remove(itemIndex)
         new PlayList(ui,baseDir,newItems,comments)
     }
 
     //Create a new PlayList containing the same items as ours except that
     //the item at the specified index has been replaced by the given item.
     def replaceItem(itemIndex:Int, item:PlayItem): PlayList = {
-        val newItems:Array[PlayItem] = Array.fill(items.length)(null)
-        Array.copy(items,0,newItems,0,items.length)
-        newItems(itemIndex) = item.usingSelfBase()
+        val newItems = items.updated(itemIndex,item.usingSelfBase())
         new PlayList(ui,baseDir,newItems,comments)
     }
 
     //Create a new PlayList containing the same items as ours except that
     //the specified image is rotated.
     def rotateItem(itemIndex:Int, rot:Int):PlayList = {
-        val newItems:Array[PlayItem] = Array.fill(items.length)(null)
-        Array.copy(items,0,newItems,0,items.length)
-        newItems(itemIndex) = PlayItem.rotate(items(itemIndex),rot)
+        val newItems = items.updated(itemIndex,
+                PlayItem.rotate(items(itemIndex),rot))
         new PlayList(ui,baseDir,newItems,comments)
     }
 
@@ -100,25 +101,25 @@ class PlayList(
     def ensureSize(newSize:Int):PlayList = {
         if (size >= newSize)
             return this         //already big enough
-        val newItems:Array[PlayItem] = Array.fill(newSize)(null)
-        Array.copy(items,0,newItems,0,items.length)
-        for (i <- items.length until newItems.length)
-            newItems(i) = PlayItem.emptyItem()
+        var newItems = items
+        while (newItems.size<newSize)
+            newItems = newItems.append(PlayItem.emptyItem())
         new PlayList(ui,baseDir,newItems,comments)
     }
 
     /** Return the number of items in the playlist. */
-    def size() = items.length
+    def size() = items.size
 
     /** Count the number of non-empty items. */
     def countNonEmpty():Int =
-        items.filter(item => item!=null && !item.isEmpty).length
+        items.iterator.filter(item => item!=null && !item.isEmpty).length
 
     def getItem(n:Int) = items(n)
 
-    def getBaseDirs():Array[File] = items.map(_.getBaseDir())
+    def getBaseDirs():Array[File] = items.iterator.map(_.getBaseDir()).toArray
 
-    def getFileNames():Array[String] = items.map(_.getFileName())
+    def getFileNames():Array[String] =
+        items.iterator.map(_.getFileName()).toArray
 
     /** Save our playlist to a file. */
     def save(filename:String):Boolean = save(new File(filename),false)
@@ -155,6 +156,10 @@ class PlayList(
 }
 
 object PlayList {
+    private val versions = new AtomicLong(0)
+
+    private def nextVersion():Long = versions.incrementAndGet()
+
     def apply(ui:StandardUi):PlayList = {
         new PlayList(ui,new File("."),new Array[PlayItem](0),Nil)
     }
@@ -173,80 +178,81 @@ object PlayList {
             filename:String):PlayList = load(ui,new File(filename))
 
     /** Load a playlist from a file. */
-    def load(ui:StandardUi,f:File):PlayList = {
+    def load(ui:StandardUi,f:File):PlayList = load(ui,f,null)
+
+    /** Load a playlist from a file.
+     * If loaded is not null, we call it with a partial playlist each time
+     * we have read another chunk of items, so that the caller can start
+     * displaying a large playlist before we have read all of it.
+     * The chunks get bigger as we go so that the total amount of copying
+     * stays proportional to the size of the list.
+     * If the last partial playlist has all of the items, we return it
+     * rather than a copy.
+     */
+    def load(ui:StandardUi, f:File, loaded:(PlayList)=>Unit):PlayList = {
         val dir = f.getParentFile()
         if (f.isDirectory())
-            loadDirectory(ui,f)
-        else
-            load(ui,new LineNumberReader(new FileReader(f)),dir)
+            loadDirectory(ui,f,loaded)
+        else {
+            val in = new FileReader(f)
+            try {
+                load(ui,in,dir,loaded)
+            } finally {
+                in.close()
+            }
+        }
     }
 
+    /** Load a playlist from a file, reporting partial playlists
+     * as for load(StandardUi,File,(PlayList)=>Unit). */
+    def load(ui:StandardUi, filename:String, loaded:(PlayList)=>Unit):
+            PlayList = load(ui,new File(filename),loaded)
+
     //Given a directory, look for a file called "index.mpr" and load
     //that file; if not found, scan the directory for all files with
     //acceptable filename extensions, in alphabetical order.
     private def loadDirectory(ui:StandardUi,
-            dir:File):PlayList = {
+            dir:File, loaded:(PlayList)=>Unit):PlayList = {
         val indexFileName = "index."+FileInfo.MIMPRINT_EXTENSION
         val indexFile = new File(dir,indexFileName)
         if (indexFile.exists)
-            load(ui,indexFile)
+            load(ui,indexFile,loaded)
         else {
             //No index file, scan the directory
-            val fileNames:Array[String] = getPlayableFileNames(dir)
+            val fileNames:Array[String] =
+                DirectoryIndex.getPlayableFileNames(dir)
             apply(ui,dir,fileNames,0,fileNames.length)
         }
     }
 
     /** Load a playlist from a stream. */
     def load(ui:StandardUi,
-            in:LineNumberReader, baseDir:File):PlayList = {
-        val items = new ArrayBuffer[PlayItem]
-        var listComments:List[String] = Nil
-        var lines = new ListBuffer[String]
-        var line:String = in.readLine()
-        if (line!=null && line.startsWith("<?xml")) {
-            //Make sure we don't load a template file as a playlist
-            throw new IllegalArgumentException(
-                    "Attempt to load xml file as PlayList")
-        }
-        //Read leading list-comment lines (starting with two # chars)
-        while (line!=null && isListComment(line)) {
-            lines += line
-            line = in.readLine()
-        }
-        if (lines.length>0) {
-            listComments = lines.toList
-            lines = new ListBuffer[String]
-        }
-        var itemBaseDir = baseDir;
-        while (line!=null) {
-            lines += line
-            if (PlayItem.isFinalLine(line)) {
-                val item = PlayItem(lines.toList,itemBaseDir)
-                items += item
-                itemBaseDir = item.getBaseDir   //may not be what we passed in
-                lines = new ListBuffer[String]
-            }
-            line = in.readLine()
-        }
-        //TODO - process trailling lines
-        new PlayList(ui,baseDir,items.toArray,listComments)
-    }
+            in:LineNumberReader, baseDir:File):PlayList =
+        load(ui,in,baseDir,null)
 
-    //True if the line is a list comment line (for the whole file)
-    private def isListComment(line:String) = line.trim.startsWith("##")
+    private val FIRST_CHUNK_SIZE = 256
 
-    //Return a list of all the filenames in a directory that
-    //we want to include in our PlayList.
-    private def getPlayableFileNames(dir:File):Array[String] = {
-        val filter = new FilenameFilter() {
-            override def accept(dir:File, name:String):Boolean =
-                    FileInfo.isImageFileName(name) ||
-                    FileInfo.isOurFileName(name)
+    private def load(ui:StandardUi, in:Reader, baseDir:File,
+            loaded:(PlayList)=>Unit):PlayList = {
+        val parser = new PlayListParser(in,baseDir)
+        val listComments = parser.listComments
+        val items = new ArrayBuffer[PlayItem]
+        var nextChunk = FIRST_CHUNK_SIZE
+        var lastLoaded:PlayList = null
+        var item = parser.nextItem()
+        while (item!=null) {
+            items += item
+            if (loaded!=null && items.length>=nextChunk) {
+                lastLoaded = new PlayList(ui,baseDir,PersistentSeq(items),
+                        listComments)
+                loaded(lastLoaded)
+                nextChunk = nextChunk * 2
+            }
+            item = parser.nextItem()
         }
-        val list = dir.list(filter);
-        Sorting.stableSort(list,
-            (s1:String,s2:String)=>FileInfo.compareFileNames(s1,s2)<0)
-        list
+        if (lastLoaded!=null && lastLoaded.size==items.length)
+            lastLoaded          //already have the complete list
+        else
+            new PlayList(ui,baseDir,PersistentSeq(items),listComments)
     }
 }
@@ -14,9 +14,20 @@ sealed abstract class PlayListMessage {
     def tracker:PlayListTracker //every case class must have this field
 }
 
+/** A message that is sent to subscribers after the playlist has been
+ * changed from oldList to newList.  The tracker keeps the most recent of
+ * these so that it can send them again to a subscriber that asks for
+ * the changes since a version with a PlayListRequestChangesSince. */
+sealed abstract class PlayListChangeMessage extends PlayListMessage {
+    def oldList:PlayList
+    def newList:PlayList
+}
+
 /** PlayListInit is setn to a subscriber in response to a
  * PlayListRequestInit message, which the subscriber should send
- * immediately after subscribing. */
+ * immediately after subscribing.  It is also sent in response to a
+ * PlayListRequestChangesSince when the tracker no longer has all of
+ * the changes the subscriber asked for. */
 case class PlayListInit(tracker:PlayListTracker, list:PlayList)
         extends PlayListMessage
 
@@ -25,20 +36,20 @@ case class PlayListInit(tracker:PlayListTracker, list:PlayList)
  * @param index The index of the new item in newList. */
 case class PlayListAddItem(tracker:PlayListTracker,
         oldList:PlayList, newList:PlayList, index:Int)
-        extends PlayListMessage
+        extends PlayListChangeMessage
 
 /** PlayListRemoveItem is sent to subscribers after an item has been removed
  * from the playst at the specifid index.
  * @param index The index of the removed item in oldList. */
 case class PlayListRemoveItem(tracker:PlayListTracker,
         oldList:PlayList, newList:PlayList, index:Int)
-        extends PlayListMessage
+        extends PlayListChangeMessage
 
 /** PlayListChangeItem is sent to subscribers after the item at the
  * specified index has been changed. */
 case class PlayListChangeItem(tracker:PlayListTracker,
         oldList:PlayList, newList:PlayList, index:Int)
-        extends PlayListMessage
+        extends PlayListChangeMessage
 
 /** PlayListUpdateItem is sent to subscribers after related data for
  * the item at the specified index has been changed. */
@@ -48,15 +59,24 @@ case class PlayListUpdateItem(tracker:PlayListTracker,
 
 /** PlayListPreSelectItem is sent to subscribers before a select event.
  *  Subscribers must process it quickly.
- */
+ * @param serial The serial number of the selection, the same as
+ *        in the SelectItem message that follows. */
 case class PlayListPreSelectItem(tracker:PlayListTracker,
-        list:PlayList, index:Int)
+        list:PlayList, index:Int, serial:Int)
         extends PlayListMessage
 
-/** PlayListSelectItem is sent to subscribers to select an item. */
+/** PlayListSelectItem is sent to subscribers to select an item.
+ * @param serial The serial number of the selection.  Each selection
+ *        published by the tracker gets a higher number than the last. */
 case class PlayListSelectItem(tracker:PlayListTracker,
-        list:PlayList, index:Int)
-        extends PlayListMessage
+        list:PlayList, index:Int, serial:Int)
+        extends PlayListMessage {
+    /** True if the tracker has not published a later selection.
+     * A subscriber that takes a long time to process a selection
+     * can skip the work when this is false, since another SelectItem
+     * message is on its way. */
+    def isLatest:Boolean = tracker.isLatestSelect(serial)
+}
 
 /** PlayListPostSelectItem is sent to subscribers after a select event.
  *  Subscribers must process it quickly.
@@ -65,8 +85,17 @@ case class PlayListPostSelectItem(tracker:PlayListTracker,
         list:PlayList, index:Int)
         extends PlayListMessage
 
+/** PlayListAppendItems is sent to subscribers after items have been
+ * added to the end of the playlist, such as while a large playlist
+ * is being loaded after a PlayListChangeList message with the first
+ * part of it.
+ * @param index The index in newList of the first new item. */
+case class PlayListAppendItems(tracker:PlayListTracker,
+        oldList:PlayList, newList:PlayList, index:Int)
+        extends PlayListChangeMessage
+
 /** PlayListChangeList is sent to subscribers after the whole list
  * has been changed. */
 case class PlayListChangeList(tracker:PlayListTracker,
         oldList:PlayList, newList:PlayList)
-        extends PlayListMessage
+        extends PlayListChangeMessage
@@ -0,0 +1,247 @@
+/* PlayListParser.scala
+ *
+ * Read the items of a playlist file one at a time.
+ */
+
+package net.jimmc.mimprint
+
+import java.io.File
+import java.io.Reader
+
+import scala.collection.mutable.ListBuffer
+
+/** A parser for our playlist (mpr) files.
+ * We scan the characters of each line in place rather than splitting
+ * and trimming it into new strings, and we return one item at a time,
+ * so that a caller can start using the first part of a large playlist
+ * while we are still reading the rest.
+ * <p>
+ * The file starts with optional list comment lines (starting with ##).
+ * Each item consists of any number of comment lines (starting with #)
+ * and option lines (starting with -), followed by a final line that is
+ * either a file name line or a -empty line.
+ * Lines after the last final line are ignored.
+ * Errors are reported as an IllegalArgumentException with the number
+ * of the offending line; an error is not reported until we reach the
+ * final line of the item that contains it.
+ */
+class PlayListParser(in:Reader, listBaseDir:File) {
+    private val buf = new Array[Char](8192)
+    private var bufPos = 0
+    private var bufLimit = 0
+    private var skipLF = false          //true after reading a CR
+    private var atEof = false
+
+    //The current line is in line(0 until lineLength), or lineValid is false
+    private var line = new Array[Char](256)
+    private var lineLength = 0
+    private var lineValid = false
+    private var lineNumber = 0
+
+    private var itemBaseDir = listBaseDir
+
+    /** The list comment lines at the top of the file. */
+    val listComments:List[String] = readListComments()
+
+    //Read leading list-comment lines (starting with two # chars)
+    private def readListComments():List[String] = {
+        readLine()
+        if (lineValid && startsWith(0,"<?xml")) {
+            //Make sure we don't load a template file as a playlist
+            throw new IllegalArgumentException(
+                    "Attempt to load xml file as PlayList")
+        }
+        val comments = new ListBuffer[String]
+        while (lineValid && isListComment) {
+            comments += lineString
+            readLine()
+        }
+        comments.toList
+    }
+
+    /** Read the next item from the file, or return null if there are
+     * no more items. */
+    def nextItem():PlayItem = {
+        var comments:ListBuffer[String] = null
+        var baseDir = itemBaseDir
+        var error:String = null
+        var errorLine = 0
+
+        def setError(msg:String) {
+            if (error==null) {
+                error = msg
+                errorLine = lineNumber
+            }
+        }
+
+        while (lineValid) {
+            val start = trimStart
+            val end = trimEnd(start)
+            val c = if (start<end) line(start) else ' '
+            if (c=='#') {
+                if (comments==null)
+                    comments = new ListBuffer[String]
+                comments += lineString
+            } else if (Character.isLetterOrDigit(c) || c=='.' || c=='_') {
+                //File name line, the final line of the item
+                val (fileName, rotFlag, optError) = parseImageInfo(start,end)
+                if (optError!=null)
+                    setError(optError)
+                return finishItem(comments,baseDir,fileName,rotFlag,
+                        error,errorLine)
+            } else if (end-start==6 && startsWith(start,"-empty")) {
+                return finishItem(comments,baseDir,null,0,error,errorLine)
+            } else if (c=='-') {
+                //Option line; the option is the first space-separated word
+                var wordEnd = start
+                while (wordEnd<end && line(wordEnd)!=' ')
+                    wordEnd = wordEnd + 1
+                if (startsWith(start,"-base=") && wordEnd>=start+6) {
+                    val bStart = trimStart(start+6,wordEnd)
+                    val bEnd = trimEnd(bStart,wordEnd)
+                    if (bStart==bEnd)
+                        setError("No value for -base option")
+                    else
+                        baseDir = new File(new String(line,bStart,bEnd-bStart))
+                } else
+                    setError("Unknown option line "+lineString)
+            } else {
+                setError("Bad item line '"+lineString+"'")
+            }
+            readLine()
+        }
+        null    //no more final lines, ignore any trailing lines
+    }
+
+    private def finishItem(comments:ListBuffer[String], baseDir:File,
+            fileName:String, rotFlag:Int,
+            error:String, errorLine:Int):PlayItem = {
+        if (error!=null)
+            throw new IllegalArgumentException("Line "+errorLine+": "+error)
+        readLine()      //move past our final line
+        itemBaseDir = baseDir   //the next item starts with our base dir
+        val commentList = if (comments==null) Nil else comments.toList
+        new PlayItem(commentList,baseDir,fileName,rotFlag)
+    }
+
+    //Parse a file name line, which has been trimmed to start until end.
+    //The file name is everything up to the first semicolon;
+    //the options are separated by semicolons.
+    //Return the file name, rotation and error message, if any.
+    private def parseImageInfo(start:Int, end:Int):(String,Int,String) = {
+        var semi = start
+        while (semi<end && line(semi)!=';')
+            semi = semi + 1
+        val fileName = new String(line,start,semi-start)
+        var rotFlag = 0
+        var optStart = semi + 1
+        while (optStart<=end) {
+            var optEnd = optStart
+            while (optEnd<end && line(optEnd)!=';')
+                optEnd = optEnd + 1
+            val oStart = trimStart(optStart,optEnd)
+            val oEnd = trimEnd(oStart,optEnd)
+            val n = oEnd - oStart
+            if (n==0) {
+                //ignore empty options
+            } else if (n==2 && startsWith(oStart,"+r"))
+                rotFlag = 1
+            else if (n==2 && startsWith(oStart,"-r"))
+                rotFlag = -1
+            else if (n==3 && startsWith(oStart,"+rr"))
+                rotFlag = 2
+            else {
+                val opt = new String(line,optStart,optEnd-optStart)
+                return (fileName, rotFlag,
+                        "Unknown image file option '"+ opt + "'")
+            }
+            optStart = optEnd + 1
+        }
+        (fileName, rotFlag, null)
+    }
+
+    //True if the current line is a list comment line (for the whole file)
+    private def isListComment:Boolean = startsWith(trimStart,"##")
+
+    private def lineString = new String(line,0,lineLength)
+
+    //True if the current line has the given text at position pos
+    private def startsWith(pos:Int, s:String):Boolean = {
+        if (pos+s.length>lineLength)
+            return false
+        var i = 0
+        while (i<s.length) {
+            if (line(pos+i)!=s.charAt(i))
+                return false
+            i = i + 1
+        }
+        true
+    }
+
+    //Trimming treats all control characters as white space, as String.trim
+    private def trimStart:Int = trimStart(0,lineLength)
+
+    private def trimStart(from:Int, to:Int):Int = {
+        var i = from
+        while (i<to && line(i)<=' ')
+            i = i + 1
+        i
+    }
+
+    private def trimEnd(start:Int):Int = trimEnd(start,lineLength)
+
+    private def trimEnd(start:Int, to:Int):Int = {
+        var i = to
+        while (i>start && line(i-1)<=' ')
+            i = i - 1
+        i
+    }
+
+    //Read the next line into our line buffer.
+    //Lines end with LF, CR or CR LF, as for BufferedReader.readLine.
+    private def readLine() {
+        lineLength = 0
+        lineValid = false
+        while (true) {
+            if (bufPos>=bufLimit && !fillBuffer()) {
+                if (lineValid)
+                    lineNumber = lineNumber + 1
+                return          //end of file
+            }
+            val c = buf(bufPos)
+            bufPos = bufPos + 1
+            if (skipLF && c=='\n') {
+                skipLF = false
+            } else {
+                skipLF = false
+                if (c=='\n' || c=='\r') {
+                    skipLF = (c=='\r')
+                    lineValid = true
+                    lineNumber = lineNumber + 1
+                    return
+                }
+                if (lineLength==line.length) {
+                    val newLine = new Array[Char](line.length*2)
+                    Array.copy(line,0,newLine,0,lineLength)
+                    line = newLine
+                }
+                line(lineLength) = c
+                lineLength = lineLength + 1
+                lineValid = true
+            }
+        }
+    }
+
+    private def fillBuffer():Boolean = {
+        if (atEof)
+            return false
+        val n = in.read(buf,0,buf.length)
+        if (n<=0) {
+            atEof = true
+            return false
+        }
+        bufPos = 0
+        bufLimit = n
+        true
+    }
+}
@@ -0,0 +1,114 @@
+/* PlayListPrefetcher.scala
+ *
+ * Load the playlist of the directory the user is likely to move to next.
+ */
+
+package net.jimmc.mimprint
+
+import net.jimmc.util.StandardUi
+
+import java.io.File
+
+/** A background thread that loads the playlist of the directory next to
+ * the one being viewed, so that moving to it does not have to wait for
+ * the disk.
+ * Each call to prefetch replaces the previous one, and we only keep one
+ * loaded playlist.  A prefetched playlist is only handed out if the
+ * directory has not changed since we loaded it: its index file has the
+ * same modification time and size, or, if it has no index file, the
+ * DirectoryIndex still has the same generation of the listing we
+ * loaded from.
+ */
+class PlayListPrefetcher(ui:StandardUi) {
+    private val lock = new Object
+    private var pending:Option[(File,Int)] = None       //(dir,move)
+    private var loaded:Option[Prefetched] = None
+    private var started = false
+
+    private case class Prefetched(dir:File, list:PlayList,
+            indexModified:Long, indexLength:Long, generation:Long)
+
+    /** Start loading the playlist of the directory move places from dir. */
+    def prefetch(dir:File, move:Int) {
+        lock.synchronized {
+            pending = Some((dir,move))
+            if (!started)
+                start()
+            lock.notifyAll()
+        }
+    }
+
+    /** Get the playlist for the named directory if we have prefetched it
+     * and it is still current. */
+    def take(fileName:String):Option[PlayList] = {
+        val dir = new File(fileName).getAbsoluteFile
+        val p = lock.synchronized {
+            loaded match {
+                case Some(p) if p.dir==dir =>
+                    loaded = None
+                    p
+                case _ => return None
+            }
+        }
+        if (isCurrent(p)) Some(p.list) else None
+    }
+
+    private def indexFile(dir:File) =
+        new File(dir,"index."+FileInfo.MIMPRINT_EXTENSION)
+
+    private def isCurrent(p:Prefetched):Boolean = {
+        val index = indexFile(p.dir)
+        val modified = index.lastModified   //0 if no file
+        if (modified!=p.indexModified || index.length!=p.indexLength)
+            false
+        else if (modified==0)
+            p.generation>=0 && DirectoryIndex.generation(p.dir)==p.generation
+        else
+            true
+    }
+
+    private def start() {
+        started = true
+        val t = new Thread("PlayListPrefetcher") {
+            override def run() {
+                while (true) {  //keep running until the app exits
+                    val (dir, move) = waitForWork()
+                    try {
+                        load(dir,move)
+                    } catch {
+                        //The user will see the error on moving there
+                        case ex:Exception =>
+                    }
+                }
+            }
+        }
+        t.setDaemon(true)
+        t.setPriority(Thread.NORM_PRIORITY - 2)
+        t.start()
+    }
+
+    private def waitForWork():(File,Int) = {
+        lock.synchronized {
+            while (pending.isEmpty)
+                lock.wait()
+            val p = pending.get
+            pending = None
+            p
+        }
+    }
+
+    private def load(fromDir:File, move:Int) {
+        val dir = DirectoryNavigator.getRelativeDirectory(fromDir,move)
+        if (dir==null)
+            return
+        val absDir = dir.getAbsoluteFile
+        val index = indexFile(absDir)
+        val modified = index.lastModified
+        val length = index.length
+        val list = PlayList.load(ui,absDir)
+        val generation = DirectoryIndex.generation(absDir)
+        lock.synchronized {
+            loaded = Some(Prefetched(absDir,list,modified,length,generation))
+        }
+    }
+}
@@ -17,6 +17,12 @@ sealed abstract class PlayListRequest
 case class PlayListRequestInit(sub:Subscriber[PlayListMessage])
         extends PlayListRequest
 
+/** A request to send the subscriber the change messages that took
+ * the playlist from the given version to the current one, or a
+ * PlayListInit if the tracker no longer has all of them. */
+case class PlayListRequestChangesSince(sub:Subscriber[PlayListMessage],
+        version:Long) extends PlayListRequest
+
 /** Request to add an item to the end of a playlist. */
 case class PlayListRequestAdd(list:PlayList, item:PlayItem)
         extends PlayListRequest
@@ -68,3 +74,10 @@ case class PlayListRequestLeft(list:PlayList) extends PlayListRequest
 
 /** Request to select the next playlist. */
 case class PlayListRequestRight(list:PlayList) extends PlayListRequest
+
+/** Request to load a new playlist from a file or directory. */
+case class PlayListRequestLoad(fileName:String) extends PlayListRequest
+
+/** Sent by the tracker to itself to publish the most recently
+ * requested selection. */
+case class PlayListFlushSelect() extends PlayListRequest
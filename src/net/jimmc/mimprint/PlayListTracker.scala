@@ -7,43 +7,72 @@ package net.jimmc.mimprint
 
 import net.jimmc.util.ActorPublisher
 import net.jimmc.util.AsyncUi
-import net.jimmc.util.FileUtilS
+import net.jimmc.util.EventActor
 import net.jimmc.util.PFCatch
 import net.jimmc.util.SomeOrNone
 import net.jimmc.util.StdLogger
+import net.jimmc.util.Subscriber
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.ArrayDeque
 
-import scala.actors.Actor
-import scala.actors.Actor.loop
 import scala.collection.mutable.Map
 
 /** A playlist of images. */
-class PlayListTracker(val ui:AsyncUi) extends Actor
+class PlayListTracker(val ui:AsyncUi) extends EventActor
         with ActorPublisher[PlayListMessage]
         with StdLogger{
     //Our current playlist
     private var playList:PlayList = PlayList(ui)
     private var currentIndex:Int = -1
+    private var selectPending = false
+    @volatile private var selectSerial = 0
     private var isModified = false
     private var lastLoadFileName:String = _
+    private val prefetcher = new PlayListPrefetcher(ui)
+    //The most recent change messages we published, oldest first
+    private val journal = new ArrayDeque[PlayListChangeMessage]
     var askSaveOnChanges = false
 
-    /* We always start our actor right away so that clients can send
-     * us subscribe requests as soon as we are created.
-     */
-    this.start()
+    override def actorName = "PlayListTracker"
 
-    def act() {
-        loop {
-            react (PFCatch(handleSubscribe orElse handleOther,
-                    "PlayListTracker",ui))
-        }
+    protected lazy val handler:PartialFunction[Any,Unit] =
+        PFCatch(handleSubscribe orElse handleSelect orElse
+                handleOther, "PlayListTracker",ui)
+
+    //Selection requests only move currentIndex; the selection is published
+    //when we get to the PlayListFlushSelect we send ourself, so a burst
+    //of requests already in our queue (such as from holding down an
+    //arrow key) results in only one published selection.
+    private val handleSelect : PartialFunction[Any,Unit] = {
+        case m:PlayListRequestSelect =>
+            if (listMatches(m.list))
+                requestSelect(m.index)
+        case m:PlayListRequestUp =>
+            if (listMatches(m.list))
+                selectUp()
+        case m:PlayListRequestDown =>
+            if (listMatches(m.list))
+                selectDown()
+        case m:PlayListFlushSelect =>
+            flushSelect()
     }
+
     private val handleOther : PartialFunction[Any,Unit] = {
+        case m:Any =>
+            //Publish any pending selection before anything that might
+            //change the list, so that subscribers get the selection
+            //for the list it was made in.
+            flushSelect()
+            handleChange(m)
+    }
+
+    private def handleChange(msg:Any):Unit = msg match {
         case m:PlayListRequestInit =>
             m.sub ! PlayListInit(this,playList)
+        case m:PlayListRequestChangesSince =>
+            sendChangesSince(m.sub,m.version)
         case m:PlayListRequestAdd =>
             if (listMatches(m.list))
                 addItem(m.item)
@@ -65,30 +94,67 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
         case m:PlayListRequestRotate =>
             if (listMatches(m.list))
                 rotateItem(m.index, m.rot)
-        case m:PlayListRequestSelect =>
-            if (listMatches(m.list))
-                selectItem(m.index)
-        case m:PlayListRequestUp =>
-            if (listMatches(m.list))
-                selectUp()
-        case m:PlayListRequestDown =>
-            if (listMatches(m.list))
-                selectDown()
         case m:PlayListRequestLeft =>
             if (listMatches(m.list))
                 selectLeft()
         case m:PlayListRequestRight =>
             if (listMatches(m.list))
                 selectRight()
+        case m:PlayListRequestLoad =>
+            load(m.fileName)
         case _ => println("Unrecognized message to PlayList")
     }
 
+    //True if the request was made against our current list.
+    //A request made against an older list could refer to the wrong item,
+    //so we ignore it; the requester will have been sent the changes.
     private def listMatches(list:PlayList):Boolean = {
-        if (list!=playList) {
-            println("Unknown or stale PlayList in tracker request")
+        val matches = (list!=null && list.version==playList.version)
+        if (!matches) {
+            println("Stale PlayList in tracker request: version "+
+                    (if (list==null) "null" else list.version)+
+                    ", current version "+playList.version)
                 //Could happen, but should be rare, so we basically ignore it
         }
-        (list==playList)          //OK to proceed if we have the right list
+        matches
+    }
+
+    //Publish a change to our list, and remember it for subscribers
+    //that ask for the changes since an earlier version.
+    //The lists in the other change messages share most of their items,
+    //but a PlayListChangeList holds a whole unrelated list, so we don't
+    //keep it, nor the changes before it; a subscriber that missed it
+    //gets the current list in an init message, which it needs anyway.
+    private def publishChange(m:PlayListChangeMessage) {
+        m match {
+            case _:PlayListChangeList =>
+                journal.clear()
+            case _ =>
+                journal.addLast(m)
+                if (journal.size>PlayListTracker.JOURNAL_SIZE)
+                    journal.removeFirst()
+        }
+        publish(m)
+    }
+
+    //Send the subscriber the changes since the given version, in the
+    //order we published them.  If we don't have all of them we send
+    //the current list instead.
+    private def sendChangesSince(sub:Subscriber[PlayListMessage],
+            version:Long) {
+        if (version==playList.version)
+            return              //nothing has changed
+        val it = journal.iterator
+        var found = false
+        while (it.hasNext) {
+            val m = it.next
+            if (m.oldList.version==version)
+                found = true
+            if (found)
+                sub ! m
+        }
+        if (!found)
+            sub ! PlayListInit(this,playList)
     }
 
     /** Add an item to our current PlayList to produce a new current PlayList,
@@ -100,7 +166,7 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
         val newIndex = playList.size - 1
         playList = newPlayList
         isModified = true
-        publish(PlayListAddItem(this,oldPlayList,newPlayList,newIndex))
+        publishChange(PlayListAddItem(this,oldPlayList,newPlayList,newIndex))
     }
 
     private def insertItem(itemIndex:Int, item:PlayItem) {
@@ -108,7 +174,7 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
         val newPlayList = playList.insertItem(itemIndex, item)
         playList = newPlayList
         isModified = true
-        publish(PlayListAddItem(this,oldPlayList,newPlayList,itemIndex))
+        publishChange(PlayListAddItem(this,oldPlayList,newPlayList,itemIndex))
     }
 
     private def removeItem(index:Int) {
@@ -117,7 +183,7 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
         val newPlayList = playList.removeItem(index)
         playList = newPlayList
         isModified = true
-        publish(PlayListRemoveItem(this,oldPlayList,newPlayList,index))
+        publishChange(PlayListRemoveItem(this,oldPlayList,newPlayList,index))
         logger.debug("leave PlayListTracker.removeItem")
     }
 
@@ -127,7 +193,7 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
                 asInstanceOf[PlayList]
         playList = newPlayList
         isModified = true
-        publish(PlayListChangeItem(this,oldPlayList,newPlayList,itemIndex))
+        publishChange(PlayListChangeItem(this,oldPlayList,newPlayList,itemIndex))
     }
 
     private def updateItem(itemIndex:Int) {
@@ -141,7 +207,7 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
                 asInstanceOf[PlayList]
         playList = newPlayList
         isModified = true
-        publish(PlayListChangeItem(this,oldPlayList,newPlayList,itemIndex))
+        publishChange(PlayListChangeItem(this,oldPlayList,newPlayList,itemIndex))
     }
 
     private def rotateItem(itemIndex:Int, rot:Int) {
@@ -150,14 +216,39 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
                 asInstanceOf[PlayList]
         playList = newPlayList
         isModified = true
-        publish(PlayListChangeItem(this,oldPlayList,newPlayList,itemIndex))
+        publishChange(PlayListChangeItem(this,oldPlayList,newPlayList,itemIndex))
+    }
+
+    //Note a new selection, to be published when we get to our
+    //flush message.
+    private def requestSelect(itemIndex:Int) {
+        currentIndex = itemIndex
+        if (!selectPending) {
+            selectPending = true
+            this ! PlayListFlushSelect()
+        }
     }
 
+    //Publish the pending selection, if any.
+    private def flushSelect() {
+        if (selectPending) {
+            selectPending = false
+            selectItem(currentIndex)
+        }
+    }
+
+    /** True if serial is the number of the most recently published
+     * selection.  May be called from any thread. */
+    def isLatestSelect(serial:Int):Boolean = (serial==selectSerial)
+
     private def selectItem(itemIndex:Int) {
         //no change to the playlist, we just publish a message
         currentIndex = itemIndex
+        selectPending = false
+        selectSerial = selectSerial + 1
+        val serial = selectSerial
 
-        val pre = PlayListPreSelectItem(this,playList,itemIndex)
+        val pre = PlayListPreSelectItem(this,playList,itemIndex,serial)
 
         logger.debug("PlayListTracker.selectItem publishing PreSelect")
         //First we publish a pre-select event so that everyone knows
@@ -169,7 +260,7 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
         logger.debug("PlayListTracker.selectItem publishing Select")
         //We publish the select event, which may take a while to process
         //(such as by the image viewer that has to load the image)
-        publish(PlayListSelectItem(this,playList,itemIndex))
+        publish(PlayListSelectItem(this,playList,itemIndex,serial))
 
         //unregister; if nobody else registered, this will cause
         //the PostSelect to be sent; if sombody else registered,
@@ -214,10 +305,11 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
 
     private def selectUp() {
         if (currentIndex>0)
-            selectItem(currentIndex - 1)
+            requestSelect(currentIndex - 1)
         else {
             val prompt = "At beginning of "+playList.baseDir+";\n"
-            val newDir:File = FileUtilS.getPreviousDirectory(playList.baseDir)
+            val newDir:File =
+                DirectoryNavigator.getPreviousDirectory(playList.baseDir)
             if (newDir==null) {
                 val eMsg = prompt + "No previous directory"
                 ui.invokeUi(ui.errorDialog(eMsg))
@@ -234,10 +326,11 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
 
     private def selectDown() {
         if (currentIndex< playList.size - 1)
-            selectItem(currentIndex + 1)
+            requestSelect(currentIndex + 1)
         else {
             val prompt = "At end of "+playList.baseDir+";\n"
-            val newDir:File = FileUtilS.getNextDirectory(playList.baseDir)
+            val newDir:File =
+                DirectoryNavigator.getNextDirectory(playList.baseDir)
             if (newDir==null) {
                 val eMsg = prompt + "No next directory"
                 ui.invokeUi(ui.errorDialog(eMsg))
@@ -255,7 +348,8 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
     private def selectLeft() {
         if (!saveChangesAndContinue())
             return      //canceled
-        val newDir:File = FileUtilS.getPreviousDirectory(playList.baseDir)
+        val newDir:File =
+                DirectoryNavigator.getPreviousDirectory(playList.baseDir)
         if (newDir==null) {
             val eMsg = "No previous directory"
             ui.invokeUi(ui.errorDialog(eMsg))
@@ -267,7 +361,8 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
     private def selectRight() {
         if (!saveChangesAndContinue())
             return      //canceled
-        val newDir:File = FileUtilS.getNextDirectory(playList.baseDir)
+        val newDir:File =
+                DirectoryNavigator.getNextDirectory(playList.baseDir)
         if (newDir==null) {
             val eMsg = "No next directory"
             ui.invokeUi(ui.errorDialog(eMsg))
@@ -328,7 +423,22 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
         if (!saveChangesAndContinue())
             return      //canceled
         val oldPlayList = playList
-        val newPlayList = PlayList.load(ui,fileName).asInstanceOf[PlayList]
+        //Publish the list as we load it so that subscribers can display
+        //the start of a large list without waiting for all of it.
+        var published:PlayList = null
+        def publishLoaded(list:PlayList) {
+            playList = list
+            if (published==null)
+                publishChange(PlayListChangeList(this,oldPlayList,list))
+            else
+                publishChange(PlayListAppendItems(this,published,list,published.size))
+            published = list
+        }
+        //A prefetched list may be older than our current one, so we give
+        //it a new version to keep our versions increasing.
+        val newPlayList =
+                prefetcher.take(fileName).map(_.newVersion()) getOrElse
+                PlayList.load(ui,fileName,publishLoaded _)
         lastLoadFileName =
             if ((new File(fileName)).isDirectory) {
                 if (fileName.endsWith(File.separator))
@@ -337,9 +447,12 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
                     fileName+File.separator+"index.mpr"
             } else
                 fileName
-        playList = newPlayList
         isModified = false
-        publish(PlayListChangeList(this,oldPlayList,newPlayList))
+        if (newPlayList ne published)
+            publishLoaded(newPlayList)
+        //Get the directory the user is likely to move to next ready
+        if ((new File(fileName)).isDirectory)
+            prefetcher.prefetch(new File(fileName),if (selectLast) -1 else 1)
         val idx = if (selectLast) newPlayList.size - 1 else 0
         //Auto select the first/last item in the list if it is an image file
         if (newPlayList.size>0 &&
@@ -380,4 +493,15 @@ class PlayListTracker(val ui:AsyncUi) extends Actor
                 false
         }
     }
+
+    /* We always start our actor right away so that clients can send
+     * us subscribe requests as soon as we are created.  We do it last
+     * so that our handlers are set up before the first message arrives.
+     */
+    this.start()
+}
+
+object PlayListTracker {
+    /** The number of change messages we keep for PlayListRequestChangesSince. */
+    val JOURNAL_SIZE = 1000
 }
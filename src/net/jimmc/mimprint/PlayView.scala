@@ -5,38 +5,101 @@
 
 package net.jimmc.mimprint
 
-import net.jimmc.util.ActorPublisher
+import net.jimmc.util.EventActor
 import net.jimmc.util.PFCatch
 import net.jimmc.util.Subscribe
 import net.jimmc.util.Subscriber
 
-import scala.actors.Actor
-import scala.actors.Actor.loop
-
 /** A view of a PlayList. */
-abstract class PlayView(private val tracker:PlayListTracker) extends Actor
-        with Subscriber[PlayListMessage] {
+abstract class PlayView(private val tracker:PlayListTracker)
+        extends EventActor with Subscriber[PlayListMessage] {
 
-    def act() {
+    override protected def onStart() {
         tracker ! Subscribe(this)
         tracker ! PlayListRequestInit(this)       //send us an init message
-        loop {
-            react (PFCatch(handlePlayListMessage orElse handleOtherMessage,
-                    "PlayView",tracker.ui))
-        }
     }
 
+    protected lazy val handler:PartialFunction[Any,Unit] =
+        PFCatch(handlePlayListMessage orElse handleOtherMessage,
+                "PlayView",tracker.ui)
+
+    //A newer selection from a tracker makes any earlier one from that
+    //tracker we have not yet processed pointless, so we drop the
+    //earlier one.
+    override protected def conflationKey(msg:Any):Any = msg match {
+        case m:PlayListSelectItem => ("select",m.tracker)
+        case m:PlayListPostSelectItem => ("postSelect",m.tracker)
+        case _ => null
+    }
+
+    //If our queue fills up with changes from our tracker, we drop them
+    //and ask for a new init message instead.  We don't ask for the
+    //changes since our version, since that could fill our queue again.
+    override protected def isCollapsible(msg:Any):Boolean = msg match {
+        case m:PlayListChangeMessage => m.tracker==tracker
+        case m:PlayListUpdateItem => m.tracker==tracker
+        case m:PlayListInit => m.tracker==tracker
+        case _ => false
+    }
+
+    override protected def collapsedMessage:Any = PlayView.Resync
+
+    //The version of the list we last got from our tracker, or -1 until
+    //we get our init message.
+    private var listVersion = -1L
+    private var catchUpPending = false
+
     //Handle our standard messages
     protected val handlePlayListMessage : PartialFunction[Any,Unit] = {
-        case m:PlayListInit => playListInit(m)
-        case m:PlayListAddItem => playListAddItem(m)
-        case m:PlayListRemoveItem => playListRemoveItem(m)
-        case m:PlayListChangeItem => playListChangeItem(m)
+        case PlayView.Resync =>
+            catchUpPending = true       //ignore changes until the init
+            tracker ! PlayListRequestInit(this)
+        case m:PlayListInit =>
+            if (m.tracker==tracker) {
+                listVersion = m.list.version
+                catchUpPending = false
+            }
+            playListInit(m)
+        //The guard must not call inSequence, since isDefinedAt may
+        //evaluate it more than once for a message.
+        case m:PlayListChangeMessage if (m.tracker==tracker) =>
+            if (inSequence(m))
+                playListChange(m)
+            //else ignore it, see inSequence
+        case m:PlayListChangeMessage => playListChange(m)
         case m:PlayListUpdateItem => playListUpdateItem(m)
         case m:PlayListPreSelectItem => playListPreSelectItem(m)
         case m:PlayListSelectItem => playListSelectItem(m)
         case m:PlayListPostSelectItem => playListPostSelectItem(m)
+    }
+
+    private def playListChange(m:PlayListChangeMessage) = m match {
+        case m:PlayListAddItem => playListAddItem(m)
+        case m:PlayListRemoveItem => playListRemoveItem(m)
+        case m:PlayListChangeItem => playListChangeItem(m)
         case m:PlayListChangeList => playListChangeList(m)
+        case m:PlayListAppendItems => playListAppendItems(m)
+    }
+
+    //True if the change is to the list we have, in which case we note
+    //the new version.  A change we already have (one made before the list
+    //in our init message) is ignored.  If we have missed a change, we ask
+    //our tracker for all of the changes since our version and ignore
+    //the others until those arrive.
+    private def inSequence(m:PlayListChangeMessage):Boolean = {
+        if (listVersion<0 || m.newList.version<=listVersion)
+            false
+        else if (m.oldList.version==listVersion) {
+            listVersion = m.newList.version
+            catchUpPending = false
+            true
+        } else {
+            if (!catchUpPending) {
+                catchUpPending = true
+                tracker ! PlayListRequestChangesSince(this,listVersion)
+            }
+            false
+        }
     }
 
     //Extending class can override this val to add processing for
@@ -55,4 +118,10 @@ abstract class PlayView(private val tracker:PlayListTracker) extends Actor
     protected def playListSelectItem(m:PlayListSelectItem):Unit
     protected def playListPostSelectItem(m:PlayListPostSelectItem):Unit = {}
     protected def playListChangeList(m:PlayListChangeList):Unit
+    protected def playListAppendItems(m:PlayListAppendItems):Unit
+}
+
+object PlayView {
+    //Takes the place of the changes dropped from a full queue
+    private case object Resync
 }
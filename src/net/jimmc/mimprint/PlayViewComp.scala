@@ -13,6 +13,8 @@ import java.awt.Component
 abstract class PlayViewComp(val name:String, val viewer:SViewer,
         val tracker:PlayListTracker) extends PlayView(tracker) {
 
+    override def actorName = name
+
     def getComponent():Component
 
     def isShowing():Boolean
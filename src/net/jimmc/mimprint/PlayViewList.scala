@@ -8,7 +8,7 @@ package net.jimmc.mimprint
 import net.jimmc.swing.SwingS
 import net.jimmc.swing.SDragSource
 import net.jimmc.swing.SMenuItem
-import net.jimmc.util.FileUtilS
+import net.jimmc.util.SizedLruCache
 import net.jimmc.util.StdLogger
 
 import java.awt.BorderLayout
@@ -33,6 +33,8 @@ import java.io.StringWriter
 import javax.swing.AbstractListModel
 import javax.swing.BorderFactory
 import javax.swing.DefaultListCellRenderer
+import javax.swing.event.ChangeEvent
+import javax.swing.event.ChangeListener
 import javax.swing.event.ListSelectionEvent
 import javax.swing.event.ListSelectionListener
 import javax.swing.ImageIcon
@@ -42,8 +44,6 @@ import javax.swing.JPanel
 import javax.swing.JPopupMenu
 import javax.swing.JScrollPane
 
-import scala.util.Sorting
-
 class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
         extends PlayViewComp(name,viewer,tracker)
 	with SDragSource with StdLogger {
@@ -58,20 +58,17 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
     protected[mimprint] var includeDirectoryDates = false
     protected[mimprint] var includeIcons = false
     private var showingFileInfo = false
+    private val MAX_FILE_INFOS = 2000  //how many FileInfos we keep around
+    private val FILE_INFO_LINES = 4    //text lines in a cell with file info
+    private val CELL_CHARS = 40        //text width of a cell, in characters
 
     private var playList:PlayList = _
     private var targetDirectory:File = _
-    private var playableFileNames:Array[String] = _
-    private var pathNames:Array[String] = _
-    private var pathCount:Int = _
-    private var subdirNames:Array[String] = _
-    private var subdirCount:Int = _
-    private var fileNames:Array[String] = _
-    private var fileCount:Int = _
-    private var fileInfos:Array[FileInfo] = _
+    @volatile private var pathCount:Int = _
+    @volatile private var subdirCount:Int = _
     private var ourComponent:Component = _
     private var fileNameList:JList = _
-    private var fileNameListModel:ArrayListModel = _
+    private val fileNameListModel = new FileListModel
     private var currentListIndex = -1
         //JList index of selected item; if an image is selected, this value
         // is == imageIndex+pathCount+subdirCount
@@ -84,6 +81,11 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
         secondaryListIndex - (pathCount + subdirCount)
     def baseDir = playList.baseDir
 
+    //The rows the list is displaying, as (first,last), or (-1,-1) if none.
+    //This is kept up to date on the event thread so that our loader
+    //threads can read it without touching the JList.
+    @volatile private var visibleRange:(Int,Int) = (-1,-1)
+
     private var noContextMenu:JPopupMenu = _
     private var pathContextMenu:JPopupMenu = _
     private var subdirContextMenu:JPopupMenu = _
@@ -91,15 +93,28 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
     private var fileContextMenuTitle:JLabel = _
 
     private val iconLoader = new IconLoader(viewer) {
-        def iconLoaded(fileInfos:Array[FileInfo], n:Int):Boolean =
-            PlayViewList.this.iconLoaded(fileInfos,n)
-        def getFileInfoList():Array[FileInfo] = PlayViewList.this.fileInfos
+        def iconLoaded(fileInfo:FileInfo) =
+            PlayViewList.this.iconLoaded(fileInfo)
+        def getRowCount():Int = fileNameListModel.getSize
+        def getFileInfo(row:Int):FileInfo =
+            fileNameListModel.getLoadedFileInfo(row)
+        def getVisibleRange():(Int,Int) = visibleRange
+    }
+
+    private val infoLoader = new FileInfoLoader(viewer) {
+        def loadInfo(fileInfo:FileInfo) =
+            fileInfo.loadInfo(includeDirectoryDates)
+        def infoLoaded(batch:List[FileInfo]) =
+            PlayViewList.this.infoLoaded(batch)
+        def getRowCount():Int = fileNameListModel.getSize
+        def getFileInfo(row:Int):FileInfo =
+            fileNameListModel.getFileInfo(row)
+        def getVisibleRange():(Int,Int) = visibleRange
     }
-    iconLoader.setPriority(iconLoader.getPriority() - 3)
 
     def getComponent():Component = {
         val p = new JPanel()
-        fileNameList = new JList()
+        fileNameList = new JList(fileNameListModel)
         fileNameList.setAutoscrolls(false)
             //Autoscroll and drag-and-drop interfere with each other
             //(see <http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4449146>)
@@ -109,6 +124,9 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
         fileNameList.addListSelectionListener(
                 new PlayViewListSelectionListener())
         val listScrollPane = new JScrollPane(fileNameList)
+        listScrollPane.getViewport.addChangeListener(new ChangeListener() {
+            def stateChanged(ev:ChangeEvent) = updateVisibleRange()
+        })
         listScrollPane.setPreferredSize(new Dimension(250,400))
         p.setLayout(new BorderLayout())
         p.add(listScrollPane)
@@ -120,6 +138,7 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
         subdirContextMenu = createSubdirContextMenu()
         fileContextMenu = createFileContextMenu()
 
+        infoLoader.start()
         iconLoader.start()
 
         p
@@ -183,7 +202,9 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
         playList = m.newList
         if (m.index<=currentImageIndex)
             currentListIndex += 1
-        redisplayList
+        updateModel {
+            fileNameListModel.insertItem(m.newList,m.index)
+        }
         setSelectedListIndex(currentListIndex)
     }
 
@@ -196,21 +217,27 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
             //currentListIndex = -1
         else if (m.index<currentImageIndex)
             currentListIndex -= 1
-        redisplayList
+        updateModel {
+            fileNameListModel.removeItem(m.newList,m.index)
+        }
         setSelectedListIndex(currentListIndex)
 	logger.debug("leave PlayViewList.playListRemoveItem")
     }
 
     protected def playListChangeItem(m:PlayListChangeItem) {
         playList = m.newList
-        redisplayList
+        updateModel {
+            fileNameListModel.changeItem(m.newList,m.index)
+        }
         //If our selected item got changed, we have to re-highlight it
         if (m.index==currentImageIndex)
             setSelectedListIndex(currentListIndex)
     }
 
     protected def playListUpdateItem(m:PlayListUpdateItem) {
-        redisplayList
+        updateModel {
+            fileNameListModel.changeItem(m.list,m.index)
+        }
         if (m.index==currentImageIndex)
             setSelectedListIndex(currentListIndex)
     }
@@ -274,52 +301,70 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
         redisplayList
     }
 
+    protected def playListAppendItems(m:PlayListAppendItems) {
+        playList = m.newList
+        updateModel {
+            fileNameListModel.appendItems(m.newList,m.index)
+        }
+    }
+
     //Here after updating playList.
     //Calculate the other data required for our list,
     //and redisplay our list.
     protected[mimprint] def redisplayList() {
         targetDirectory = playList.baseDir
-        val playableDirs = playList.getBaseDirs
-        playableFileNames = playList.getFileNames
-        pathNames = getPathNames(targetDirectory)
+        val pathNames = getPathNames(targetDirectory)
         val pathParents = getPathParents(pathNames)
+        val subdirNames = getSubdirNames(targetDirectory)
+        val list = playList
+        val dir = targetDirectory
         pathCount = pathNames.length
-        subdirNames = getSubdirNames(targetDirectory)
         subdirCount = subdirNames.length
-        fileCount = playableFileNames.length
-        fileNames = pathNames ++ subdirNames ++ playableFileNames
-        val dirCount = pathCount + subdirCount
-        val newFileInfos:Array[FileInfo] =
-            (0 until fileNames.length).map((i:Int) => {
-                val ii = i - dirCount
-                val fDir = if (i<pathCount) pathParents(i)
-                    else if (ii<0) targetDirectory
-                    else if (playableDirs(ii).isAbsolute) playableDirs(ii)
-                    else new File(targetDirectory,playableDirs(ii).getPath)
-                new FileInfo(i,pathCount,subdirCount,fileCount,
-                        fDir,fileNames(i))}
-            ).toArray
         //Do the actual updating on the event thread to avoid race conditions
-        val displayableNames = fileNames.map((s:String) =>
-            if (s==null || s=="") "-empty" else s)
         SwingS.invokeLater {
 	    logger.debug("enter PlayViewList.redisplayList#invokeLater")
             try {
                 appIsUpdatingModel = true
-                fileInfos = newFileInfos
-                fileNameListModel = new ArrayListModel(displayableNames)
-		logger.debug("leave PlayViewList.redisplayList#invokeLater:A")
-                fileNameList.setModel(fileNameListModel)
-		logger.debug("leave PlayViewList.redisplayList#invokeLater:B")
-                fileNameList.updateUI()
+                fileNameListModel.setContents(list,dir,
+                        pathNames,pathParents,subdirNames)
             } finally {
                 appIsUpdatingModel = false
             }
+            updateVisibleRange()
 	    logger.debug("leave PlayViewList.redisplayList#invokeLater")
         }
     }
     private var appIsUpdatingModel = false
 
+    //Note the rows now visible in the list, and tell our loaders in case
+    //there are new rows for them to work on.  Call on the event thread,
+    //after any change to the list or its viewport.
+    private def updateVisibleRange() {
+        if (fileNameList==null)
+            return
+        val range = (fileNameList.getFirstVisibleIndex,
+                fileNameList.getLastVisibleIndex)
+        if (range!=visibleRange) {
+            visibleRange = range
+            infoLoader.moreWork()
+            iconLoader.moreWork()
+        }
+    }
+
+    //Change our list model on the event thread, ignoring the selection
+    //changes that causes in the list.
+    private def updateModel(body: =>Unit) {
+        SwingS.invokeLater {
+            try {
+                appIsUpdatingModel = true
+                body
+            } finally {
+                appIsUpdatingModel = false
+            }
+            updateVisibleRange()
+        }
+    }
+
     private def getPathNames(f:File):Array[String] = {
         if (f==null || !includeDirectories)
             return Array()
@@ -348,47 +393,44 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
     private def getSubdirNames(dir:File):Array[String] = {
         if (dir==null || !dir.isDirectory || !includeDirectories)
             return Array()
-        //Get the list of all subdirectories except current and parent
-        val subdirs = FileUtilS.listDir(dir,(
-                (dir,name)=>new File(dir,name).isDirectory &&
-                name!="." && name!=".."))
-        Sorting.stableSort(subdirs,
-                    (s1:String,s2:String)=>FileInfo.compareFileNames(s1,s2)<0)
-        subdirs
+        DirectoryIndex.getSubdirNames(dir)
     }
 
-    //Get the FileInfo for the specified file in the fileNames list
+    //Get the FileInfo for the specified row in our list.
+    //If its info has not been loaded, we leave that to the infoLoader
+    //rather than reading files here on the event thread; the cell shows
+    //just the name until the info arrives.
     private def getFileInfo(index:Int):FileInfo = {
-        val fileInfo = fileInfos(index)
-        if (fileInfo==null || !fileInfo.infoLoaded) {
-            //not loaded, need to load it
-            fileInfo.loadInfo(includeDirectoryDates)
-            //leave icon null, let iconLoader fill it in
-            if (includeIcons)
-                iconLoader.moreIcons()         //tell iconLoader to load icons
-        }
+        val fileInfo = fileNameListModel.getFileInfo(index)
+        if (!fileInfo.infoLoaded)
+            infoLoader.moreWork()
         fileInfo
     }
 
-    private def iconLoaded(fileInfos:Array[FileInfo], n:Int):Boolean = {
-        if (fileInfos!=this.fileInfos) {
-            //Our list of files has changes, ignore this call
-            return false
+    private def infoLoaded(batch:List[FileInfo]) {
+        SwingS.invokeLater {
+            if (showingFileInfo) {
+                val first = fileNameList.getFirstVisibleIndex
+                val last = fileNameList.getLastVisibleIndex
+                batch.foreach(fileNameListModel.fileInfoChanged(_,first,last))
+            }
         }
-        //Refresh the list item
-        //We just want to tell the list to recalculate the size
-        //of the cell we have just updated, but we can't fire off
-        //a change notification here because that method of the
-        //model is protected.  Calling revalidate doesn't do the
-        //trick, so we hack it by setting the renderer again.
-        //Need to check our list mode and only do this if we are
-        //in the right mode; need to do that check within a sync
-        //block to prevent race condition.
-        synchronized {
-            if (showingFileInfo)
-                fileNameList.setCellRenderer(new PlayViewListCellRenderer())
+        //leave icon null, let iconLoader fill it in
+        if (includeIcons)
+            iconLoader.moreWork()         //tell iconLoader to load icons
+    }
+
+    private def iconLoaded(fileInfo:FileInfo) {
+        //Refresh the list item so that the list recalculates the size
+        //of its cell.  If the entry is no longer in our list, the
+        //model ignores this.
+        SwingS.invokeLater {
+            if (showingFileInfo) {
+                val first = fileNameList.getFirstVisibleIndex
+                val last = fileNameList.getLastVisibleIndex
+                fileNameListModel.fileInfoChanged(fileInfo,first,last)
+            }
         }
-        true
     }
 
     override protected val handleOtherMessage : PartialFunction[Any,Unit] = {
@@ -402,10 +444,36 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
         else
             fileNameList.setCellRenderer(new DefaultListCellRenderer())
         showingFileInfo = b
+        setCellSize()
     }
 
-    def showFileIcons(b:Boolean)  = includeIcons = b
+    def showFileIcons(b:Boolean) {
+        includeIcons = b
+        if (fileNameList!=null)
+            setCellSize()
         //caller should call redisplayList
+    }
+
+    //Give all of our cells the same size.  Otherwise the list renders
+    //every row to lay itself out, which means loading the info for
+    //every file in the directory.  This way it only renders the rows
+    //that are visible.  Long file info text is cut off.
+    private def setCellSize() {
+        val lineHeight =
+            fileNameList.getFontMetrics(fileNameList.getFont).getHeight
+        val textHeight =
+            if (showingFileInfo) lineHeight*FILE_INFO_LINES else lineHeight
+        val iconHeight =
+            if (showingFileInfo && includeIcons) ImageUtil.ICON_SIZE else 0
+        fileNameList.setFixedCellHeight(textHeight.max(iconHeight) + 2)
+            //add 2 for the cell border
+        //Wide enough for the icon and a typical line of text; the list
+        //makes the cells as wide as the viewport if that is wider.
+        val charWidth =
+            fileNameList.getFontMetrics(fileNameList.getFont).charWidth('n')
+        val iconWidth = if (includeIcons) ImageUtil.ICON_SIZE else 0
+        fileNameList.setFixedCellWidth(iconWidth + charWidth*CELL_CHARS + 2)
+    }
 
     class PlayViewListCellRenderer extends DefaultListCellRenderer {
         override def getListCellRendererComponent(list:JList,
@@ -430,8 +498,11 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
             if (includeIcons)
                 cell.setIcon(fileInfo.icon)
             //If this item is a directory folder rather than an image,
-            //color it differently in the list.
-            if (!isSelected && fileInfo.isDirectory()) {
+            //color it differently in the list.  For the items in our
+            //playlist, we don't know that until the info is loaded.
+            val isDir = index<pathCount+subdirCount ||
+                    (fileInfo.infoLoaded && fileInfo.isDirectory())
+            if (!isSelected && isDir) {
                 val c = if (index<pathCount) pathBgColor else subdirBgColor
                 cell.setBackground(c)
             }
@@ -442,12 +513,205 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
         }
     }
 
-    class ArrayListModel(a:Array[String]) extends AbstractListModel {
-        private var array:Array[String] = a
-        def getSize():Int = array.length
-        def getElementAt(index:Int) = array(index)
-        def FireItemChanged(index:Int):Unit =
-                fireContentsChanged(this,index,index)
+    /** The rows of our list: the components of the path to our directory,
+     * its subdirectories, then the items in our playlist.
+     * We don't keep anything per row: the names come from the playlist,
+     * and we create the FileInfo for a row only when it is displayed.
+     * FileInfos are kept in a cache of limited size, so memory use does
+     * not depend on the size of the list.  Each row has its own FileInfo,
+     * since the FileInfo shows the position of its row; the key for an
+     * item is the item itself, so an item keeps its FileInfo when rows
+     * are inserted or removed before it.
+     * The model is changed only on the event thread; the IconLoader
+     * reads it from its own threads, so access is synchronized.
+     */
+    class FileListModel extends AbstractListModel {
+        private var list:PlayList = null
+        private var dir:File = null
+        private var pathNames:Array[String] = Array()
+        private var pathParents:Array[File] = Array()
+        private var subdirNames:Array[String] = Array()
+        private val infos = new SizedLruCache[AnyRef,FileInfo](
+                "FileInfo",MAX_FILE_INFOS)
+
+        private def pathCount = pathNames.length
+        private def dirCount = pathNames.length + subdirNames.length
+        private def fileCount = if (list==null) 0 else list.size
+
+        def getSize():Int = synchronized { dirCount + fileCount }
+
+        def getElementAt(row:Int):Object = synchronized {
+            if (row<pathCount)
+                pathNames(row)
+            else if (row<dirCount)
+                subdirNames(row-pathCount)
+            else {
+                val s = list.getItem(row-dirCount).getFileName
+                if (s==null || s=="") "-empty" else s
+            }
+        }
+
+        /** Replace all of our rows. */
+        def setContents(newList:PlayList, newDir:File,
+                newPathNames:Array[String], newPathParents:Array[File],
+                newSubdirNames:Array[String]) {
+            val oldSize = getSize
+            synchronized {
+                list = null
+                pathNames = Array()
+                subdirNames = Array()
+                infos.clear()
+            }
+            if (oldSize>0)
+                fireIntervalRemoved(this,0,oldSize-1)
+            val newSize = synchronized {
+                list = newList
+                dir = newDir
+                pathNames = newPathNames
+                pathParents = newPathParents
+                subdirNames = newSubdirNames
+                getSize
+            }
+            if (newSize>0)
+                fireIntervalAdded(this,0,newSize-1)
+        }
+
+        def insertItem(newList:PlayList, index:Int) {
+            val row = synchronized {
+                list = newList
+                dirCount + index
+            }
+            fireIntervalAdded(this,row,row)
+        }
+
+        def removeItem(newList:PlayList, index:Int) {
+            val row = synchronized {
+                infos.remove(keyFor(dirCount+index))
+                list = newList
+                dirCount + index
+            }
+            fireIntervalRemoved(this,row,row)
+        }
+
+        def changeItem(newList:PlayList, index:Int) {
+            val row = synchronized {
+                infos.remove(keyFor(dirCount+index))  //the old item
+                list = newList
+                infos.remove(keyFor(dirCount+index))  //the new item
+                dirCount + index
+            }
+            fireContentsChanged(this,row,row)
+        }
+
+        def appendItems(newList:PlayList, index:Int) {
+            val (first, last) = synchronized {
+                val first = getSize
+                list = newList
+                (first, getSize - 1)
+            }
+            if (last>=first)
+                fireIntervalAdded(this,first,last)
+        }
+
+        //Get the key for the FileInfo for a row.
+        //Directories are keyed by path, since each appears only once.
+        //Items are keyed by the PlayItem, compared by identity, since
+        //the same file can appear more than once in a playlist and all
+        //empty items have the same path.  If the same PlayItem is in the
+        //list more than once, the FileInfo for its key belongs to the row
+        //it was last positioned at, and any other row with that item adds
+        //its index to the key.
+        private def keyFor(row:Int):AnyRef = {
+            if (row<pathCount)
+                new File(pathParents(row),pathNames(row)).getPath
+            else if (row<dirCount)
+                new File(dir,subdirNames(row-pathCount)).getPath
+            else {
+                val index = row - dirCount
+                val item = list.getItem(index)
+                val key = new ItemKey(item,-1)
+                infos.get(key) match {
+                    case Some(fi) if (fi.getIndex!=row &&
+                            rowHasItem(fi.getIndex,item)) =>
+                        new ItemKey(item,index)
+                    case _ => key
+                }
+            }
+        }
+
+        private def rowHasItem(row:Int, item:PlayItem):Boolean =
+            row>=dirCount && row<getSize && (list.getItem(row-dirCount) eq item)
+
+        /** Get the FileInfo for a row, creating it if necessary,
+         * or null if there is no such row. */
+        def getFileInfo(row:Int):FileInfo = synchronized {
+            if (row<0 || row>=getSize)
+                return null     //the list has changed
+            val key = keyFor(row)
+            val cached = infos.get(key)
+            if (cached.isDefined) {
+                //Rows may have moved since we created it
+                cached.get.setPosition(row,pathCount,subdirNames.length,
+                        fileCount)
+                cached.get
+            } else {
+                val fi = createFileInfo(row)
+                infos.put(key,fi,1)
+                fi
+            }
+        }
+
+        /** Get the FileInfo for a row if we have already created it
+         * and loaded its info, else null. */
+        def getLoadedFileInfo(row:Int):FileInfo = synchronized {
+            if (row<0 || row>=getSize)
+                null
+            else infos.get(keyFor(row)) match {
+                case Some(fi) if fi.infoLoaded =>
+                    fi.setPosition(row,pathCount,subdirNames.length,fileCount)
+                    fi
+                case _ => null
+            }
+        }
+
+        private def createFileInfo(row:Int):FileInfo = {
+            if (row<dirCount) {
+                //We know these are directories without looking
+                val (fDir, name) =
+                    if (row<pathCount) (pathParents(row), pathNames(row))
+                    else (dir, subdirNames(row-pathCount))
+                new FileInfo(row,pathCount,subdirNames.length,fileCount,
+                        fDir,name,FileInfo.DIR)
+            } else {
+                val item = list.getItem(row-dirCount)
+                val itemDir = item.getBaseDir
+                val fDir = if (itemDir.isAbsolute) itemDir
+                           else new File(dir,itemDir.getPath)
+                new FileInfo(row,pathCount,subdirNames.length,fileCount,
+                        fDir,item.getFileName)
+            }
+        }
+
+        /** Tell our listeners that the display of the row for this FileInfo
+         * has changed.  We only look for it in the given range of rows. */
+        def fileInfoChanged(fi:FileInfo, first:Int, last:Int) {
+            val row = synchronized {
+                (first.max(0) to last.min(getSize-1)).find(
+                        getLoadedFileInfo(_) eq fi)
+            }
+            row.foreach(r => fireContentsChanged(this,r,r))
+        }
+    }
+
+    //PlayItem.equals compares contents, so we compare the item by identity.
+    //The index is -1 except for repeats of an item, see keyFor.
+    private class ItemKey(val item:PlayItem, val index:Int) {
+        override def equals(that:Any):Boolean = that match {
+            case other:ItemKey => (item eq other.item) && index==other.index
+            case _ => false
+        }
+        override def hashCode():Int =
+            System.identityHashCode(item)*31 + index
     }
 
     class PlayViewListSelectionListener extends ListSelectionListener {
@@ -482,8 +746,10 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
             val fileInfo = getFileInfo(currentListIndex)
             val path = fileInfo.getPath
             if (FileInfo.isPlayList(path) && !appIsSelecting) {
-                //It's an mpr file, assume it's a playlist and load it up
-                tracker.load(path)
+                //It's an mpr file, assume it's a playlist and load it up.
+                //We let the tracker do this in its own thread so that
+                //we can display the list as it is loaded.
+                tracker ! PlayListRequestLoad(path)
             } else if (FileInfo.isOurFileName(path) && !appIsSelecting) {
                 //TODO - validate that it is in fact a template file
                 //assume layout template, display it in printable area
@@ -500,7 +766,7 @@ class PlayViewList(name:String,viewer:SViewer,tracker:PlayListTracker)
                 //If user clicked (rather than using up or down arrows
                 //in the main window), then we open that directory.
                 val fileInfo = getFileInfo(currentListIndex)
-                tracker.load(fileInfo.getPath)
+                tracker ! PlayListRequestLoad(fileInfo.getPath)
             }
         }
         viewer ! SViewerRequestFocus(playList)
@@ -15,8 +15,6 @@ import java.io.PrintWriter
 import javax.swing.JLabel
 import javax.swing.JPanel
 
-import scala.actors.Actor.loop
-
 /** View all of the images in a PlayList. */
 class PlayViewMulti(name:String,
         viewer:SViewer,
@@ -89,17 +87,15 @@ class PlayViewMulti(name:String,
         areaPage.repaint()
     }
 
-    override def act() {
-        tracker ! Subscribe(this)
-        tracker ! PlayListRequestInit(this)
+    override protected def onStart() {
+        super.onStart()         //subscribe to our tracker
         mainTracker ! Subscribe(this)
-        loop {
-            react (PFCatch(
-                    handleMainPlayListMessage orElse handlePlayListMessage
-                    orElse handleOtherMessage,"PlayViewMulti "+name, viewer))
-        }
     }
 
+    override protected lazy val handler:PartialFunction[Any,Unit] =
+        PFCatch(handleMainPlayListMessage orElse handlePlayListMessage
+                orElse handleOtherMessage,"PlayViewMulti "+name, viewer)
+
     private val handleMainPlayListMessage : PartialFunction[Any,Unit] = {
         case m:PlayListSelectItem if (m.tracker==mainTracker) =>
             mainPlayListSelect(m)
@@ -153,6 +149,8 @@ class PlayViewMulti(name:String,
     }
 
     protected def playListSelectItem(m:PlayListSelectItem) {
+        if (!m.isLatest)
+            return      //another selection is coming, skip this one
         playListIndex = m.index
         refreshAreas()
     }
@@ -163,6 +161,11 @@ class PlayViewMulti(name:String,
         refreshAreas()
     }
 
+    protected def playListAppendItems(m:PlayListAppendItems) {
+        playList = m.newList
+        refreshAreas()
+    }
+
     override protected val handleOtherMessage : PartialFunction[Any,Unit] = {
         case m:PlayViewMultiRequestFocus => areaPage.requestFocus()
         case m:PlayViewMultiRequestPrint => areaPage.print()
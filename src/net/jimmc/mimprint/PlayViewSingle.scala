@@ -45,6 +45,7 @@ class PlayViewSingle(name:String, viewer:SViewer, tracker:PlayListTracker)
     private var captionLabel:JLabel = _
     private var includeFileInfo = false
     private var mediaTracker:MediaTracker = _
+    private var prefetcher:ImagePrefetcher = _
     private var playList:PlayList = _
     private var currentIndex:Int = -1
     private var currentItem:PlayItem = _
@@ -71,6 +72,7 @@ class PlayViewSingle(name:String, viewer:SViewer, tracker:PlayListTracker)
                 new PlayViewSingleComponentListener())
         initCursors
         mediaTracker = new MediaTracker(imageComponent)
+        prefetcher = new ImagePrefetcher(imageComponent)
 
         contextMenu = createContextMenu()
 
@@ -142,8 +144,6 @@ class PlayViewSingle(name:String, viewer:SViewer, tracker:PlayListTracker)
 
     def isShowing():Boolean = imageComponent.isShowing
 
-    //TODO - add code to preload next/previous images?
-
     private def initCursors() {
         val tk = imageComponent.getToolkit
         val blankCursorImage = tk.createImage(new Array[Byte](0))
@@ -189,11 +189,19 @@ class PlayViewSingle(name:String, viewer:SViewer, tracker:PlayListTracker)
     private var preSelectItem:Option[PlayListPreSelectItem] = None
     override protected def playListPreSelectItem(m:PlayListPreSelectItem) {
         m.tracker.registerSelector(m)
+        //If the SelectItem for an earlier PreSelect was dropped because
+        //this selection superseded it, we are done with that one.
+        preSelectItem foreach { p =>
+            p.tracker.unregisterSelector(p)
+        }
         preSelectItem = Some(m)
     }
 
     protected def playListSelectItem(m:PlayListSelectItem) {
-        imageSelected(m.index)
+        //If the tracker has already published another selection,
+        //don't waste time loading up an image that will be replaced.
+        if (m.isLatest)
+            imageSelected(m.index)
         preSelectItem foreach { m =>
             m.tracker.unregisterSelector(m)
         }
@@ -207,6 +215,10 @@ class PlayViewSingle(name:String, viewer:SViewer, tracker:PlayListTracker)
             //imageSelected(0)
     }
 
+    protected def playListAppendItems(m:PlayListAppendItems) {
+        playList = m.newList
+    }
+
     override protected val handleOtherMessage : PartialFunction[Any,Unit] = {
         case m:PlayViewSingleRequestFocus => imageComponent.requestFocus()
         case m:Any => println("Unrecognized message to PlayViewSingle")
@@ -247,7 +259,7 @@ class PlayViewSingle(name:String, viewer:SViewer, tracker:PlayListTracker)
         fileInfo.loadInfo(false)
         val captionText0 =
             if (includeFileInfo)
-                fileInfo.getFileTextInfo(true,false)
+                fileInfo.html       //loadInfo(false) built it
             else
                 htmlify(fileInfo.text)
         val captionText = if (captionText0==null) "" else captionText0
@@ -266,11 +278,8 @@ class PlayViewSingle(name:String, viewer:SViewer, tracker:PlayListTracker)
 
     private def imageSelected(index:Int) {
         logger.debug("PlayViewSingle.imageSelected enter")
-        if (!isShowing || messageQueueContainsSelect()) {
-            //If we are not showing, or if there is another "select" request
-            //already in our incoming message queue (such as when the user
-            //moves down the list quickly),
-            //don't waste time loading up an image.
+        if (!isShowing) {
+            //If we are not showing, don't waste time loading up an image.
             if (currentIndex >= 0) {
 //println("Single "+name+" not showing")
                 imageComponent.setText("")
@@ -279,6 +288,7 @@ class PlayViewSingle(name:String, viewer:SViewer, tracker:PlayListTracker)
                 currentIndex = -1
                 currentItem = null
             }
+            prefetcher.cancel()
             logger.debug("PlayViewSingle.imageSelected exit (1)")
             return
         }
@@ -315,33 +325,20 @@ class PlayViewSingle(name:String, viewer:SViewer, tracker:PlayListTracker)
                 imageComponent.setIcon(ii)
                 imageComponent.setText(null)
                 setCaptionText(index)
-                preloadImage(index-1)
-                preloadImage(index+1)
+                prefetcher.select(playList,index)
                 setCursorBusy(false)
             }
         }
         imagePanel.revalidate()
+        logger.debug(ImageCache.stats)
         logger.debug("PlayViewSingle.imageSelected exit")
     }
 
-    private def preloadImage(index:Int) {
-        if (index<0) return
-        if (index>=playList.size) return
-        val item = playList.getItem(index)
-        if (item.fileName.endsWith("."+FileInfo.MIMPRINT_EXTENSION)) return
-            //ignore non-image files
-        val f = new File(item.baseDir,item.fileName)
-
-        //TODO - Might want to do this part in another thread
-        val im = ImageUtil.getImage(imageComponent,f.getPath)
-        ImageUtil.scaleAndRotate(im,item.rotFlag,f.getPath, imageComponent)
-    }
-
     private def getTransformedImage(index:Int):Image = {
         val item = playList.getItem(index)
         val f = new File(item.baseDir,item.fileName)
-        val im = ImageUtil.getImage(imageComponent,f.getPath)
-        ImageUtil.scaleAndRotate(im,item.rotFlag,f.getPath, imageComponent)
+        ImageUtil.getTransformedImage(imageComponent,f.getPath,item.rotFlag,
+                imageComponent.getWidth,imageComponent.getHeight)
     }
     
     //Set the cursor to a busy cursor.
@@ -362,17 +359,6 @@ class PlayViewSingle(name:String, viewer:SViewer, tracker:PlayListTracker)
         imageComponent.setCursor(if (visible) null else invisibleCursor)
     }
 
-    //True if we have any pending "select" messages in our input queue
-    private def messageQueueContainsSelect():Boolean = {
-        /* Unfortunately, Scala 2.8 no longer allows accessing the mailbox
-         * this way, so we can't easily peek ahead.
-         * Until I get around to reimplementing this in a cleaner way,
-         * I will just disable this feature.
-         */
-        //mailbox.get(0)(_.isInstanceOf[PlayListSelectItem]).isDefined
-        false
-    }
-
     def refresh() {
         currentItem = null          //force reload of image to get new size
         imageSelected(currentIndex)
@@ -0,0 +1,146 @@
+/* PrintRenderer.scala
+ *
+ * Draw an image file at printer resolution a band at a time.
+ */
+
+package net.jimmc.mimprint
+
+import java.awt.Graphics2D
+import java.awt.Rectangle
+import java.awt.RenderingHints
+import java.awt.geom.AffineTransform
+import java.io.File
+import java.io.IOException
+import javax.imageio.ImageIO
+
+/** Prints images at the resolution of the printer rather than at the
+ * resolution of the screen.
+ * Rather than making a scaled and rotated copy of the whole image, we
+ * decode the file one horizontal band at a time, subsampled to about
+ * the number of pixels the printer needs, and let the graphics context
+ * scale and rotate each band as it draws it.  Only one band is in memory
+ * at a time, so the memory we use does not depend on the size of the
+ * paper or the number of images on the page.  Bands that fall outside
+ * the clip are not decoded at all, which matters when the printer
+ * system calls us once for each band of its own.
+ * The band size can be set in megabytes with the system property
+ * mimprint.print.bandMb, and defaults to 16.
+ */
+object PrintRenderer {
+    val bandPixels:Long = {
+        val mb = System.getProperty("mimprint.print.bandMb")
+        val bytes = if (mb!=null) java.lang.Long.parseLong(mb) * 1024 * 1024
+                    else 16L * 1024 * 1024
+        bytes / 4       //we decode to 4 bytes per pixel
+    }
+
+    //The number of device pixels per user unit in g2
+    private def deviceScale(g2:Graphics2D):Double =
+        math.sqrt(math.abs(g2.getTransform.getDeterminant))
+
+    /** Get the number of device pixels the larger dimension of the
+     * rectangle (in user space) covers in g2. */
+    def deviceSize(g2:Graphics2D, r:Rectangle):Int =
+        math.ceil(math.max(r.width,r.height) * deviceScale(g2)).toInt
+
+    /** Get the width and height in device pixels that the rectangle
+     * (in user space) covers in g2, reduced if need be to no more than
+     * bandPixels in all, so that an image of that size fits in the
+     * memory we allow for one band. */
+    def cappedDimensions(g2:Graphics2D, r:Rectangle):(Int,Int) = {
+        val scale = deviceScale(g2)
+        val width = math.ceil(r.width*scale).toInt
+        val height = math.ceil(r.height*scale).toInt
+        val pixels = width.toLong * height
+        if (pixels<=bandPixels)
+            (width, height)
+        else {
+            val f = math.sqrt(bandPixels.toDouble/pixels)
+            ((width*f).toInt.max(1), (height*f).toInt.max(1))
+        }
+    }
+
+    /** Draw the image in the file into the area (in user space) of g2,
+     * rotated by rot quarter turns and scaled to fit the area.
+     * @return False if we could not read the file this way, in which
+     *         case the caller should draw it some other way.
+     */
+    def paintImage(g2:Graphics2D, path:String, rot:Int,
+            area:Rectangle):Boolean = {
+        val iis = try {
+            ImageIO.createImageInputStream(new File(path))
+        } catch {
+            case ex:IOException => null
+        }
+        if (iis==null)
+            return false
+        try {
+            val readers = ImageIO.getImageReaders(iis)
+            if (!readers.hasNext)
+                return false
+            val reader = readers.next
+            try {
+                //We need to seek back in the file for each band
+                reader.setInput(iis,false,true)
+                val srcWidth = reader.getWidth(0)
+                val srcHeight = reader.getHeight(0)
+                val xy = (rot==1 || rot==3 || rot== -1)
+                val (rotWidth, rotHeight) =
+                    if (xy) (srcHeight, srcWidth) else (srcWidth, srcHeight)
+                val scale = math.min(
+                        area.width.asInstanceOf[Double]/rotWidth,
+                        area.height.asInstanceOf[Double]/rotHeight)
+                //Decode only as many pixels as the printer will use
+                val devScale = scale * deviceScale(g2)
+                val factor = ImageUtil.subsampleFactor(srcWidth,srcHeight,
+                        math.ceil(srcWidth*devScale).toInt.max(1),
+                        math.ceil(srcHeight*devScale).toInt.max(1))
+                //Map source pixels into user space: center the image
+                //on the origin, scale it, rotate it, then move it to
+                //the center of the area.
+                val tx = new AffineTransform()
+                tx.translate(area.x + area.width/2.0,
+                        area.y + area.height/2.0)
+                tx.quadrantRotate(-rot)
+                tx.scale(scale,scale)
+                tx.translate(-srcWidth/2.0,-srcHeight/2.0)
+
+                val decodedWidth = (srcWidth + factor - 1)/factor
+                val bandRows = (bandPixels/decodedWidth).max(1).toInt * factor
+                val clip = g2.getClipBounds
+                val g2b = g2.create().asInstanceOf[Graphics2D]
+                try {
+                    g2b.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                            RenderingHints.VALUE_INTERPOLATION_BILINEAR)
+                    val param = reader.getDefaultReadParam
+                    param.setSourceSubsampling(factor,factor,0,0)
+                    var y = 0
+                    while (y < srcHeight) {
+                        val rows = math.min(bandRows,srcHeight-y)
+                        val region = new Rectangle(0,y,srcWidth,rows)
+                        if (clip==null || tx.createTransformedShape(region).
+                                intersects(clip)) {
+                            param.setSourceRegion(region)
+                            val band = reader.read(0,param)
+                            val bandTx = new AffineTransform(tx)
+                            bandTx.translate(0,y)
+                            bandTx.scale(factor,factor)
+                            g2b.drawImage(band,bandTx,null)
+                        }
+                        y = y + rows
+                    }
+                } finally {
+                    g2b.dispose()
+                }
+                true
+            } finally {
+                reader.dispose()
+            }
+        } catch {
+            case ex:Exception =>
+                false   //some formats (e.g. CMYK jpeg) need the old way
+        } finally {
+            iis.close()
+        }
+    }
+}
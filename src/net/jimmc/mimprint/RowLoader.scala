@@ -0,0 +1,156 @@
+/* RowLoader.scala
+ *
+ * Do work for the rows of a list on background threads, nearest the
+ * visible rows first.
+ */
+
+package net.jimmc.mimprint
+
+import scala.collection.mutable.HashSet
+import scala.collection.mutable.ListBuffer
+
+/** A set of background threads that do some work, such as loading info
+ * or icons, for the entries in a client's list.
+ * Each thread picks its work by looking at the rows the client is
+ * currently displaying, then moving outwards from them, so the entries
+ * the user can see are done first.
+ * There is no queue of pending work: each thread looks at the current
+ * rows of the client when it is ready for more work, so when the client
+ * changes its list, work for the old list is no longer done.
+ * A thread takes up to batchSize entries at a time and tells the client
+ * about all of them at once when it is done.
+ */
+abstract class RowLoader(viewer:SViewer, name:String, threadCount:Int,
+        priority:Int, batchSize:Int) {
+    private val lock = new Object
+    private val inProgress = new HashSet[FileInfo]
+    private var started = false
+
+    /** Start our threads. */
+    def start() {
+        lock.synchronized {
+            if (started)
+                return
+            started = true
+        }
+        for (n <- 0 until threadCount) {
+            val t = new RowLoaderThread(n)
+            t.setDaemon(true)
+            t.setPriority(priority)
+            t.start()
+        }
+    }
+
+    class RowLoaderThread(n:Int) extends Thread(name+"-"+n) {
+        override def run() {
+            while (true) {  //keep running until the app exits
+                try {
+                    loadBatch(waitForNextBatch())
+                } catch {
+                    case ex:Exception =>
+                        viewer.exceptionDialog(ex)
+                        Thread.sleep(10)
+                }
+            }
+        }
+    }
+
+    /** Call this from the client to notify us that
+     * we should go look for more work.
+     */
+    def moreWork() {
+        lock.synchronized {
+            lock.notifyAll()
+        }
+    }
+
+    //Wait until there are entries to work on, mark them as in progress
+    //and return them.
+    private def waitForNextBatch():List[FileInfo] = {
+        while (true) {
+            val range = getVisibleRange()
+            lock.synchronized {
+                val batch = findNextBatch(range)
+                if (!batch.isEmpty) {
+                    inProgress ++= batch
+                    return batch
+                }
+                try {
+                    lock.wait()
+                } catch {
+                    case ex:InterruptedException =>
+                        println("Wait interrupted")
+                }
+            }
+        }
+        Nil          //not reached
+    }
+
+    //Find the entries in and near the visible range that need work.
+    private def findNextBatch(range:(Int,Int)):List[FileInfo] = {
+        val (first, last) = range
+        if (first<0 || last<first)
+            return Nil          //nothing visible, so nothing to do yet
+        val count = getRowCount()
+        val batch = new ListBuffer[FileInfo]
+        def check(row:Int) {
+            if (row>=0 && row<count && batch.length<batchSize) {
+                val fi = getFileInfo(row)
+                if (fi!=null && needsWork(fi) && !inProgress.contains(fi) &&
+                        !batch.contains(fi))
+                    batch += fi
+            }
+        }
+        for (i <- first to last)
+            check(i)
+        //Move outwards from the visible range, one row at a time
+        //below and above it.
+        val margin = scanMargin(first,last)
+        var d = 1
+        while (d<=margin && batch.length<batchSize &&
+                (last+d<count || first-d>=0)) {
+            check(last+d)
+            check(first-d)
+            d = d + 1
+        }
+        batch.toList
+    }
+
+    //Do the work for a batch of entries and tell the client about them
+    private def loadBatch(batch:List[FileInfo]) {
+        try {
+            batch.foreach(load(_))
+        } finally {
+            lock.synchronized { inProgress --= batch }
+        }
+        loaded(batch)
+            //If an entry is no longer in the client's list, it ignores it.
+    }
+
+    //True if the entry needs work done
+    protected def needsWork(fileInfo:FileInfo):Boolean
+
+    //How many rows beyond the visible range we look at, given the range
+    protected def scanMargin(first:Int, last:Int):Int
+
+    //Do the work for one entry
+    protected def load(fileInfo:FileInfo):Unit
+
+    //Notify the client that it should update the display of these
+    //entries in its list.
+    protected def loaded(batch:List[FileInfo]):Unit
+
+    //Get the number of rows in the client's list
+    protected def getRowCount():Int
+
+    //Get the FileInfo for a row in the client's list, or null if there
+    //is none for us to work on.
+    protected def getFileInfo(row:Int):FileInfo
+
+    //Get the range of list indexes the client is currently displaying,
+    //as (first,last), or (-1,-1) if nothing is visible.
+    //This is called on our threads, so it must not touch any Swing
+    //components; the client should track the range on the event thread
+    //and call moreWork when it changes.
+    protected def getVisibleRange():(Int,Int)
+}
@@ -13,6 +13,7 @@ import net.jimmc.swing.SMenuItem
 import net.jimmc.swing.SwingS
 import net.jimmc.swing.ToolPrompter
 import net.jimmc.util.AsyncUi
+import net.jimmc.util.EventActor
 import net.jimmc.util.FileUtilS
 import net.jimmc.util.PFCatch
 import net.jimmc.util.Subscribe
@@ -41,8 +42,6 @@ import javax.swing.JTextField
 import javax.swing.JToolBar
 import javax.swing.JWindow
 
-import scala.actors.Actor
-import scala.actors.Actor.loop
 
 class SViewer(app:App, aboutWindow:AboutWindow)
 	extends SFrame("Mimprint",app) with AsyncUi with ToolPrompter
@@ -363,19 +362,20 @@ class SViewer(app:App, aboutWindow:AboutWindow)
     def showToolPrompt(s:String) = showStatus(s)
     def clearToolPrompt() = showStatus("")
 
-    //As of Scala 2.8, we can no longer mixin both Actor and Frame because
-    //they both include a getState method, but with different return types
-    //(and different uses).  So we delegate the actor functionality to
-    //another object, and we forward the start and ! methods to it.
-    val svActor = new Actor with Subscriber[PlayListMessage] {
-        def act() {
+    //We delegate the actor functionality to another object, so that
+    //we don't mix its methods in with those of Frame, and we forward
+    //the start and ! methods to it.
+    val svActor = new EventActor with Subscriber[PlayListMessage] {
+        override def actorName = "SViewer"
+        override protected def onStart() {
             mainTracker ! Subscribe(this)
             mainTracker ! PlayListRequestInit(this)
             printableTracker ! Subscribe(this)
             printableTracker ! PlayListRequestInit(this)
             this ! SViewerRequestFocus(null)
-            loop { react (PFCatch(handleMessage,"SViewer",SViewer.this)) }
         }
+        protected lazy val handler:PartialFunction[Any,Unit] =
+            PFCatch(handleMessage,"SViewer",SViewer.this)
     }
     def start = svActor.start
     def !(msg:Any) = svActor ! msg
@@ -466,6 +466,8 @@ class SViewer(app:App, aboutWindow:AboutWindow)
                 playList = m.newList
                 playListIndex = -1
                 setTitleToFileName("")
+            case m:PlayListAppendItems =>
+                playList = m.newList
         }
     }
 
@@ -502,6 +504,8 @@ class SViewer(app:App, aboutWindow:AboutWindow)
             case m:PlayListChangeList =>
                 printablePlayList = m.newList
                 printablePlayListIndex = -1
+            case m:PlayListAppendItems =>
+                printablePlayList = m.newList
         }
     }
 
@@ -782,6 +786,7 @@ class SViewer(app:App, aboutWindow:AboutWindow)
         val textPath = FileInfo.getTextFileNameForImage(imagePath)
         val f = new File(textPath)
         FileUtilS.writeFile(f,text)
+        DirectoryInfo.invalidateText(f)
     }
 
     /** Save the current layout to a named file. */
@@ -796,6 +801,8 @@ class SViewer(app:App, aboutWindow:AboutWindow)
             return         //cancelled
         printableMulti.saveLayoutTemplate(pwOpt.get)
         pwOpt.get.close()
+        TemplateCache.invalidate(fOpt.get)
+            //in case the file's time and size did not change
         val status = getResourceFormatted("status.SavedTemplateToFile",
                 fOpt.get.toString())
         showStatus(status)
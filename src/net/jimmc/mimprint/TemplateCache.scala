@@ -0,0 +1,132 @@
+/* TemplateCache.scala
+ *
+ * Parsed layout templates, so each template file is only parsed once.
+ */
+
+package net.jimmc.mimprint
+
+import net.jimmc.util.SizedLruCache
+
+import java.awt.Image
+import java.io.File
+import javax.xml.parsers.SAXParser
+import javax.xml.parsers.SAXParserFactory
+
+import scala.collection.mutable.ArrayBuffer
+
+import org.xml.sax.Attributes
+import org.xml.sax.helpers.AttributesImpl
+import org.xml.sax.helpers.DefaultHandler
+
+/** A cache of parsed layout template files.
+ * When we parse a template we record the SAX events from the parser.
+ * Loading the template again replays those events into the caller's
+ * handler, which builds a new AreaLayout tree for the caller to change
+ * as it likes, without reading or parsing the file.
+ * We also keep the preview image of each template that the IconLoader
+ * draws for it.
+ * Entries are checked against the modification time and length of the
+ * file, and the file is parsed again when either changes.
+ * Each thread that parses templates gets its own parser, which it reuses.
+ */
+object TemplateCache {
+    private val MAX_TEMPLATES = 500
+
+    private sealed abstract class Event
+    private case class StartElement(qName:String, attrs:Attributes)
+            extends Event
+    private case class EndElement(qName:String) extends Event
+    private case class Characters(text:String) extends Event
+
+    private class Template(val modified:Long, val length:Long,
+            val events:Array[Event]) {
+        @volatile var preview:Image = null
+    }
+
+    private val templates = new SizedLruCache[File,Template]("Templates",
+            MAX_TEMPLATES)
+
+    private val factory = SAXParserFactory.newInstance()
+    private val parsers = new ThreadLocal[SAXParser] {
+        override def initialValue():SAXParser = {
+            try {
+                factory.synchronized { factory.newSAXParser() }
+            } catch {
+                case ex:Exception =>
+                    throw new RuntimeException(
+                            "Exception creating SAXParser",ex)
+            }
+        }
+    }
+
+    /** Send the contents of the template file to the handler, as though
+     * the handler were parsing the file.
+     */
+    def load(f:File, handler:DefaultHandler) {
+        val events = getTemplate(f).events
+        handler.startDocument()
+        for (e <- events) {
+            e match {
+                case StartElement(qName, attrs) =>
+                    handler.startElement("","",qName,attrs)
+                case EndElement(qName) =>
+                    handler.endElement("","",qName)
+                case Characters(text) =>
+                    handler.characters(text.toCharArray,0,text.length)
+            }
+        }
+        handler.endDocument()
+    }
+
+    /** Get the preview image for the template file, calling make to
+     * draw it if we don't have one for the current version of the file.
+     */
+    def getPreview(f:File, make: =>Image):Image = {
+        val template = getTemplate(f)
+        if (template.preview==null)
+            template.preview = make
+        template.preview
+    }
+
+    /** Forget what we have parsed from the template file. */
+    def invalidate(f:File) = templates.remove(f.getAbsoluteFile)
+
+    private def getTemplate(f0:File):Template = {
+        val f = f0.getAbsoluteFile
+        val modified = f.lastModified
+        val length = f.length
+        val cached = templates.get(f)
+        if (cached.isDefined && cached.get.modified==modified &&
+                cached.get.length==length)
+            return cached.get
+        val template = new Template(modified,length,parse(f))
+        templates.put(f,template,1)
+        template
+    }
+
+    //Parse the file, returning the events from the parser
+    private def parse(f:File):Array[Event] = {
+        val events = new ArrayBuffer[Event]
+        val recorder = new DefaultHandler {
+            override def startElement(url:String, localName:String,
+                    qName:String, attributes:Attributes) {
+                //The parser reuses its Attributes, so we make a copy
+                events += StartElement(qName,new AttributesImpl(attributes))
+            }
+            override def endElement(url:String, localName:String,
+                    qName:String) {
+                events += EndElement(qName)
+            }
+            override def characters(ch:Array[Char], start:Int, length:Int) {
+                events += Characters(new String(ch,start,length))
+            }
+        }
+        val parser = parsers.get
+        try {
+            parser.parse(f,recorder)
+        } finally {
+            parser.reset()
+        }
+        events.toArray
+    }
+}
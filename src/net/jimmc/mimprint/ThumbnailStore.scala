@@ -0,0 +1,341 @@
+/* ThumbnailStore.scala
+ *
+ * A persistent on-disk store of image icons.
+ */
+
+package net.jimmc.mimprint
+
+import net.jimmc.util.SomeOrNone
+
+import java.awt.image.BufferedImage
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.LinkedHashMap
+import javax.imageio.ImageIO
+
+import scala.collection.mutable.HashMap
+
+/** Icons for image files are stored in one pack file per image directory,
+ * kept in a per-user directory (by default ~/.mimprint/thumbnails, or as
+ * set by the system property mimprint.thumbnailDir).
+ * Each entry is keyed by the file name and stamped with the modification
+ * time and size of the image file it came from; if either one changes,
+ * the entry is ignored and replaced the next time the icon is generated.
+ * Pack files are memory-mapped for reading and appended to for writing.
+ */
+object ThumbnailStore {
+    private val MAX_OPEN_PACKS = 16
+
+    val storeDir:File = {
+        val dirName = System.getProperty("mimprint.thumbnailDir")
+        if (dirName!=null)
+            new File(dirName)
+        else
+            new File(new File(System.getProperty("user.home"),".mimprint"),
+                    "thumbnails")
+    }
+
+    //The most recently used packs, keyed by canonical directory path
+    private val packs = new LinkedHashMap[String,ThumbnailPack](
+            MAX_OPEN_PACKS,0.75f,true) {
+        override protected def removeEldestEntry(
+                e:java.util.Map.Entry[String,ThumbnailPack]):Boolean = {
+            if (size<=MAX_OPEN_PACKS)
+                return false
+            e.getValue.close()
+            true
+        }
+    }
+
+    /** Get the stored icon for the file, or None if we don't have one
+     * or the file has changed since we stored it.
+     */
+    def get(f:File):Option[BufferedImage] = {
+        try {
+            val cf = f.getCanonicalFile
+            packFor(cf.getParentFile).get(cf.getName,
+                    cf.lastModified,cf.length)
+        } catch {
+            case ex:IOException =>
+                println("Error reading thumbnail for "+f+": "+ex.getMessage)
+                None
+        }
+    }
+
+    /** Save the icon for the file. */
+    def put(f:File, icon:BufferedImage) {
+        try {
+            val cf = f.getCanonicalFile
+            val format = if (icon.getColorModel.hasAlpha) "png" else "jpg"
+            val bytes = new ByteArrayOutputStream()
+            if (!ImageIO.write(icon,format,bytes))
+                return          //no writer for that format, don't store it
+            packFor(cf.getParentFile).put(cf.getName,
+                    cf.lastModified,cf.length,bytes.toByteArray)
+        } catch {
+            case ex:IOException =>
+                println("Error saving thumbnail for "+f+": "+ex.getMessage)
+        }
+    }
+
+    private def packFor(dir:File):ThumbnailPack = packs.synchronized {
+        val dirPath = dir.getPath
+        val p = packs.get(dirPath)
+        if (p!=null)
+            p
+        else {
+            val newPack = new ThumbnailPack(
+                    new File(storeDir,packFileName(dirPath)))
+            packs.put(dirPath,newPack)
+            newPack
+        }
+    }
+
+    //Make a file name unique to the directory
+    private def packFileName(dirPath:String):String = {
+        val digest = MessageDigest.getInstance("MD5").
+                digest(dirPath.getBytes("UTF-8"))
+        digest.map(b => "%02x".format(b & 0xff)).mkString + ".pack"
+    }
+}
+
+/** One pack file of thumbnails.
+ * The file starts with a magic string, followed by a sequence of records:
+ * a record length, the entry name, the modification time and size of the
+ * image file, the length of the image data, and the encoded image data.
+ * When an entry is replaced, the new record is appended and the old one
+ * becomes dead space, which we reclaim when the pack is next opened.
+ */
+class ThumbnailPack(val file:File) {
+    private val MAGIC = "MIMTHMB1".getBytes("US-ASCII")
+    //Bytes in a record after the record length, other than the name and
+    //data: name length, modification time, size and data length
+    private val RECORD_OVERHEAD = 2 + 8 + 8 + 4
+
+    private case class Slot(offset:Int, dataLength:Int,
+            modified:Long, length:Long, recordLength:Int)
+
+    private val index = new HashMap[String,Slot]
+    private var mapped:ByteBuffer = null
+    private var fileLength = 0
+    private var deadBytes = 0
+
+    load()
+
+    //Read the index of the pack file, compacting it if it has a lot
+    //of dead space.
+    private def load() {
+        if (!file.exists)
+            return
+        mapFile()
+        if (!scanRecords()) {
+            //Unrecognized or damaged file, start over
+            index.clear
+            file.delete()
+            mapped = null
+            fileLength = 0
+            return
+        }
+        if (deadBytes>4096 && deadBytes>fileLength/2)
+            compact()
+    }
+
+    private def mapFile() {
+        val raf = new RandomAccessFile(file,"r")
+        try {
+            val ch = raf.getChannel
+            fileLength = ch.size.toInt
+            mapped = ch.map(FileChannel.MapMode.READ_ONLY,0,fileLength)
+        } finally {
+            raf.close()
+        }
+    }
+
+    //Build the index from the mapped file.  Return false if the file is bad.
+    //If we find a damaged or partially written record we stop there and
+    //cut it and anything after it off the end of the file.
+    private def scanRecords():Boolean = {
+        val buf = mapped.duplicate()
+        if (buf.remaining<MAGIC.length)
+            return false
+        val magic = new Array[Byte](MAGIC.length)
+        buf.get(magic)
+        if (!java.util.Arrays.equals(magic,MAGIC))
+            return false
+        while (buf.remaining>0) {
+            val start = buf.position
+            if (!scanRecord(buf)) {
+                truncate(start)
+                return true
+            }
+        }
+        true
+    }
+
+    //Add the record at the position of buf to our index and move past it.
+    //Return false if the record is damaged or partial.
+    private def scanRecord(buf:ByteBuffer):Boolean = {
+        if (buf.remaining<4)
+            return false
+        val start = buf.position
+        val recordLength = buf.getInt
+        if (recordLength<RECORD_OVERHEAD || recordLength>buf.remaining)
+            return false
+        val nameLength = buf.getShort & 0xffff
+        if (nameLength>recordLength-RECORD_OVERHEAD)
+            return false
+        val nameBytes = new Array[Byte](nameLength)
+        buf.get(nameBytes)
+        val modified = buf.getLong
+        val length = buf.getLong
+        val dataLength = buf.getInt
+        if (dataLength!=recordLength-RECORD_OVERHEAD-nameLength)
+            return false
+        val slot = Slot(buf.position,dataLength,modified,length,
+                recordLength+4)
+        addSlot(new String(nameBytes,"UTF-8"),slot)
+        buf.position(start+4+recordLength)
+        true
+    }
+
+    //Cut the file off at newLength and map it again
+    private def truncate(newLength:Int) {
+        println("Dropping damaged records from thumbnail file "+file)
+        mapped = null
+        val raf = new RandomAccessFile(file,"rw")
+        try {
+            raf.setLength(newLength)
+        } finally {
+            raf.close()
+        }
+        mapFile()
+    }
+
+    private def addSlot(name:String, slot:Slot) {
+        index.get(name).foreach(old => deadBytes += old.recordLength)
+        index.put(name,slot)
+    }
+
+    def get(name:String, modified:Long, length:Long):Option[BufferedImage] = {
+        val bytes = synchronized {
+            index.get(name) match {
+                case Some(slot) if (slot.modified==modified &&
+                        slot.length==length) =>
+                    if (mapped==null ||
+                            slot.offset+slot.dataLength>mapped.capacity)
+                        mapFile()       //entry was appended after we mapped
+                    val buf = mapped.duplicate()
+                    buf.position(slot.offset)
+                    val b = new Array[Byte](slot.dataLength)
+                    buf.get(b)
+                    b
+                case _ => null
+            }
+        }
+        if (bytes==null)
+            None
+        else
+            SomeOrNone(ImageIO.read(new ByteArrayInputStream(bytes)))
+    }
+
+    def put(name:String, modified:Long, length:Long, data:Array[Byte]) {
+        synchronized {
+            val isNew = !file.exists
+            if (isNew)
+                file.getParentFile.mkdirs()
+            val out = new DataOutputStream(new FileOutputStream(file,true))
+            try {
+                if (isNew) {
+                    out.write(MAGIC)
+                    fileLength = MAGIC.length
+                }
+                val nameBytes = name.getBytes("UTF-8")
+                val recordLength = RECORD_OVERHEAD + nameBytes.length +
+                        data.length
+                out.writeInt(recordLength)
+                out.writeShort(nameBytes.length)
+                out.write(nameBytes)
+                out.writeLong(modified)
+                out.writeLong(length)
+                out.writeInt(data.length)
+                out.write(data)
+                val offset = fileLength + recordLength + 4 - data.length
+                addSlot(name,Slot(offset,data.length,modified,length,
+                        recordLength+4))
+                fileLength = fileLength + recordLength + 4
+            } finally {
+                out.close()
+            }
+        }
+    }
+
+    //Rewrite the file with only the live records
+    private def compact() {
+        val tmp = new File(file.getPath+".tmp")
+        val out = new DataOutputStream(new FileOutputStream(tmp))
+        try {
+            out.write(MAGIC)
+            index.foreach { case (name,slot) =>
+                val nameBytes = name.getBytes("UTF-8")
+                val data = new Array[Byte](slot.dataLength)
+                val buf = mapped.duplicate()
+                buf.position(slot.offset)
+                buf.get(data)
+                out.writeInt(RECORD_OVERHEAD + nameBytes.length + data.length)
+                out.writeShort(nameBytes.length)
+                out.write(nameBytes)
+                out.writeLong(slot.modified)
+                out.writeLong(slot.length)
+                out.writeInt(data.length)
+                out.write(data)
+            }
+        } finally {
+            out.close()
+        }
+        mapped = null
+        try {
+            replace(tmp,file)
+        } catch {
+            case ex:IOException =>
+                tmp.delete()    //couldn't replace it, leave it as it was
+                println("Can't compact thumbnail file "+file+": "+
+                        ex.getMessage)
+        }
+        index.clear
+        deadBytes = 0
+        fileLength = 0
+        if (file.exists) {
+            mapFile()
+            scanRecords()
+        }
+    }
+
+    //Replace the file with the new one, so that the file is always either
+    //the old one or the new one.
+    private def replace(from:File, to:File) {
+        try {
+            Files.move(from.toPath,to.toPath,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING)
+        } catch {
+            case ex:AtomicMoveNotSupportedException =>
+                Files.move(from.toPath,to.toPath,
+                        StandardCopyOption.REPLACE_EXISTING)
+        }
+    }
+
+    def close() = synchronized {
+        mapped = null           //let the mapping be collected
+    }
+}
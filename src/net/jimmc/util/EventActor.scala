@@ -0,0 +1,280 @@
+/* EventActor.scala
+ *
+ * Process messages one at a time on a shared pool of threads.
+ */
+
+package net.jimmc.util
+
+import java.util.ArrayDeque
+import java.util.WeakHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+
+/** An object that processes the messages sent to it one at a time,
+ * in the order in which they were sent, on a thread from a shared pool.
+ * This takes the place of scala.actors.Actor for our publishers and
+ * subscribers, with these differences:
+ * <ul>
+ * <li>The queue of messages has a capacity.  A thread sending to a full
+ *     queue waits for room, for up to EventActor.MAX_WAIT_MILLIS, unless
+ *     it is itself running an EventActor, in which case it does not wait
+ *     since that could deadlock two actors sending to each other.
+ *     If there is still no room, the queued messages for which
+ *     isCollapsible is true, and the new one if it is, are replaced by
+ *     the single message from collapsedMessage, which should tell the
+ *     actor to get back in step some other way.  If there are no such
+ *     messages, the message is queued anyway and counted as an overflow.
+ * <li>A subclass can say that a message supersedes an earlier one, by
+ *     giving both the same conflationKey; when the new message is sent,
+ *     the earlier one is dropped if it has not yet been processed.
+ * <li>The queue depth and dispatch latency (the time from sending a
+ *     message to starting to process it) can be inspected with stats.
+ * </ul>
+ * Messages sent before start are held until start is called.
+ */
+abstract class EventActor(val capacity:Int) {
+    import EventActor._
+
+    private case class Envelope(msg:Any, key:Any, queued:Long)
+
+    private val queue = new ArrayDeque[Envelope]
+    private val lock = new Object
+    private var started = false
+    private var scheduled = false
+
+    //Statistics, guarded by lock
+    private var maxDepth = 0
+    private var delivered = 0L
+    private var conflated = 0L
+    private var overflowed = 0L
+    private var collapsed = 0L
+    private var totalLatency = 0L       //nanoseconds
+    private var maxLatency = 0L
+
+    def this() = this(EventActor.DEFAULT_CAPACITY)
+
+    /** The name of this actor in our stats. */
+    def actorName:String = getClass.getName
+
+    /** The messages we process.  This is called for each message, so a
+     * subclass that builds its handler, as with orElse or PFCatch, should
+     * make it a lazy val rather than building it again every time. */
+    protected def handler:PartialFunction[Any,Unit]
+
+    /** Get the key for a message that supersedes any earlier message with
+     * the same key, or null if the message should always be delivered. */
+    protected def conflationKey(msg:Any):Any = null
+
+    /** True if the message may be dropped from a full queue, to be
+     * replaced by collapsedMessage.  Messages that can come in a burst,
+     * such as change notices, should be collapsible. */
+    protected def isCollapsible(msg:Any):Boolean = false
+
+    /** The message that takes the place of the collapsible messages
+     * dropped from a full queue, or null if we never drop any. */
+    protected def collapsedMessage:Any = null
+
+    /** Called by start before we process any messages. */
+    protected def onStart() {}
+
+    /** Start processing messages. */
+    def start() {
+        lock.synchronized {
+            if (started)
+                return
+            started = true
+        }
+        register(this)
+        onStart()
+        lock.synchronized { schedule() }
+    }
+
+    /** Send a message to this actor. */
+    def !(msg:Any) {
+        val key = conflationKey(msg)
+        lock.synchronized {
+            if (key!=null && removeQueued(key))
+                conflated = conflated + 1
+            if (queue.size>=capacity) {
+                if (!isDispatchThread)
+                    waitForRoom()
+                if (queue.size>=capacity) {
+                    if (collapse(msg)) {
+                        schedule()
+                        return          //msg was replaced
+                    }
+                    if (queue.size>=capacity)
+                        overflowed = overflowed + 1
+                }
+            }
+            queue.addLast(Envelope(msg,key,System.nanoTime))
+            if (queue.size>maxDepth)
+                maxDepth = queue.size
+            schedule()
+        }
+    }
+
+    /** The number of messages waiting to be processed. */
+    def queueDepth:Int = lock.synchronized { queue.size }
+
+    /** Get the statistics for this actor. */
+    def stats:Stats = lock.synchronized {
+        Stats(actorName,queue.size,maxDepth,delivered,conflated,collapsed,
+            overflowed,
+            if (delivered==0) 0 else totalLatency/delivered/1000,
+            maxLatency/1000)
+    }
+
+    //Remove the queued message with the given key, if any.
+    //Return true if we found one.
+    private def removeQueued(key:Any):Boolean = {
+        val it = queue.iterator
+        while (it.hasNext) {
+            if (it.next.key==key) {
+                it.remove()
+                return true     //there is never more than one
+            }
+        }
+        false
+    }
+
+    //Replace the collapsible messages in our full queue with our
+    //collapsedMessage.  Return true if msg is collapsible, in which case
+    //it has been replaced too.  Call with lock held.
+    private def collapse(msg:Any):Boolean = {
+        val marker = collapsedMessage
+        if (marker==null)
+            return false
+        val msgCollapses = isCollapsible(msg)
+        var dropped = if (msgCollapses) 1 else 0
+        var haveMarker = false
+        val it = queue.iterator
+        while (it.hasNext) {
+            val e = it.next
+            if (e.msg==marker)
+                haveMarker = true
+            else if (isCollapsible(e.msg)) {
+                it.remove()
+                dropped = dropped + 1
+            }
+        }
+        if (dropped>0) {
+            collapsed = collapsed + dropped
+            if (!haveMarker)
+                queue.addLast(Envelope(marker,null,System.nanoTime))
+        }
+        msgCollapses
+    }
+
+    private def waitForRoom() {
+        val deadline = System.currentTimeMillis + MAX_WAIT_MILLIS
+        var remaining = MAX_WAIT_MILLIS
+        while (queue.size>=capacity && remaining>0) {
+            lock.wait(remaining)
+            remaining = deadline - System.currentTimeMillis
+        }
+    }
+
+    //Call with lock held
+    private def schedule() {
+        if (started && !scheduled && !queue.isEmpty) {
+            scheduled = true
+            executor.execute(drainTask)
+        }
+    }
+
+    private val drainTask = new Runnable {
+        def run() = drain()
+    }
+
+    //Process the messages in our queue.  After BATCH_SIZE messages we
+    //give up our thread and get back in line, so that one busy actor
+    //can't keep the others from running.
+    private def drain() {
+        try {
+            for (n <- 0 until BATCH_SIZE) {
+                val e = lock.synchronized {
+                    val e = queue.pollFirst()
+                    if (e==null)
+                        return
+                    lock.notifyAll()    //wake up senders waiting for room
+                    val latency = System.nanoTime - e.queued
+                    delivered = delivered + 1
+                    totalLatency = totalLatency + latency
+                    if (latency>maxLatency)
+                        maxLatency = latency
+                    e
+                }
+                dispatch(e.msg)
+            }
+        } finally {
+            //Even if a handler threw an Error, get back in line if we
+            //have more messages, so that this actor keeps running.
+            lock.synchronized {
+                scheduled = false
+                schedule()
+            }
+        }
+    }
+
+    private def dispatch(msg:Any) {
+        try {
+            val h = handler
+            if (h.isDefinedAt(msg))
+                h(msg)
+            else
+                println("Unhandled message to "+actorName+": "+msg)
+        } catch {
+            case ex:Exception =>
+                println("Exception in "+actorName+": "+ex)
+                ex.printStackTrace()
+        }
+    }
+}
+
+object EventActor {
+    val DEFAULT_CAPACITY = 1000
+    val MAX_WAIT_MILLIS = 1000L
+    private val BATCH_SIZE = 50
+
+    /** Statistics for one actor.  Latencies are in microseconds. */
+    case class Stats(name:String, depth:Int, maxDepth:Int, delivered:Long,
+            conflated:Long, collapsed:Long, overflowed:Long,
+            avgLatency:Long, maxLatency:Long)
+
+    private class DispatchThread(r:Runnable, n:Int)
+            extends Thread(r,"EventActor-"+n)
+
+    //Our actors spend much of their time waiting for the UI or the disk,
+    //so we want at least a few threads even on one processor.
+    private val threadCount = Runtime.getRuntime.availableProcessors.max(4)
+    private val executor = Executors.newFixedThreadPool(threadCount,
+        new ThreadFactory() {
+            private var n = 0
+            def newThread(r:Runnable):Thread = synchronized {
+                val t = new DispatchThread(r,n)
+                n = n + 1
+                t.setDaemon(true)
+                t
+            }
+        })
+
+    private def isDispatchThread =
+        Thread.currentThread.isInstanceOf[DispatchThread]
+
+    //The started actors, for allStats
+    private val actors = new WeakHashMap[EventActor,AnyRef]
+
+    private def register(a:EventActor) =
+        actors.synchronized { actors.put(a,null) }
+
+    /** Get the statistics for all of the started actors. */
+    def allStats:List[Stats] = {
+        val all = actors.synchronized {
+            val a = new Array[EventActor](actors.size)
+            actors.keySet.toArray(a)
+            a
+        }
+        all.toList.filter(_!=null).map(_.stats)
+    }
+}
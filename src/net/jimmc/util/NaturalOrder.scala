@@ -0,0 +1,127 @@
+/* NaturalOrder.scala
+ *
+ * Compare and sort strings with embedded numbers in numeric order.
+ */
+
+package net.jimmc.util
+
+import java.util.Arrays
+
+/** Natural ordering of strings: each run of digits is compared by its
+ * numeric value, so "img9" comes before "img10", and everything else
+ * is compared character by character.
+ * A run of digits sorts where a '0' character would.
+ * Numbers that are equal except for leading zeros ("1" and "01") are
+ * ordered by String.compareTo, so that only equal strings compare equal.
+ * Only the ASCII digits 0 to 9 are treated as digits.
+ * <p>
+ * To sort many strings, use sort, which makes a sort key for each string
+ * once rather than parsing the strings on every comparison.
+ * The two always give the same order.
+ */
+object NaturalOrder {
+    private def isDigit(c:Char) = (c>='0' && c<='9')
+
+    /** Compare two strings in natural order. */
+    def compare(s1:String, s2:String):Int = {
+        val n1 = s1.length
+        val n2 = s2.length
+        var i = 0
+        var j = 0
+        while (i<n1 && j<n2) {
+            val c1 = s1.charAt(i)
+            val c2 = s2.charAt(j)
+            if (isDigit(c1) && isDigit(c2)) {
+                //Skip leading zeros, then the longer number is bigger
+                var start1 = i
+                while (start1<n1 && s1.charAt(start1)=='0')
+                    start1 = start1 + 1
+                var start2 = j
+                while (start2<n2 && s2.charAt(start2)=='0')
+                    start2 = start2 + 1
+                var end1 = start1
+                while (end1<n1 && isDigit(s1.charAt(end1)))
+                    end1 = end1 + 1
+                var end2 = start2
+                while (end2<n2 && isDigit(s2.charAt(end2)))
+                    end2 = end2 + 1
+                val len1 = end1 - start1
+                val len2 = end2 - start2
+                if (len1!=len2)
+                    return len1 - len2
+                var k = 0
+                while (k<len1) {
+                    val d1 = s1.charAt(start1+k)
+                    val d2 = s2.charAt(start2+k)
+                    if (d1!=d2)
+                        return d1 - d2
+                    k = k + 1
+                }
+                i = end1
+                j = end2
+            } else {
+                val k1 = if (isDigit(c1)) '0' else c1
+                val k2 = if (isDigit(c2)) '0' else c2
+                if (k1!=k2)
+                    return k1 - k2
+                i = i + 1
+                j = j + 1
+            }
+        }
+        if (i<n1)
+            1
+        else if (j<n2)
+            -1
+        else
+            s1.compareTo(s2)
+    }
+
+    /** Get a key for the string such that comparing the keys of two
+     * strings with String.compareTo gives the same result as compare,
+     * except for strings that differ only in leading zeros.
+     * Each run of digits becomes a '0', a char holding the number of
+     * digits without leading zeros, and those digits.
+     */
+    def sortKey(s:String):String = {
+        val n = s.length
+        val sb = new java.lang.StringBuilder(n+4)
+        var i = 0
+        while (i<n) {
+            val c = s.charAt(i)
+            if (isDigit(c)) {
+                var start = i
+                while (start<n && s.charAt(start)=='0')
+                    start = start + 1
+                var end = start
+                while (end<n && isDigit(s.charAt(end)))
+                    end = end + 1
+                sb.append('0')
+                sb.append((end-start).toChar)
+                sb.append(s,start,end)
+                i = end
+            } else {
+                sb.append(c)
+                i = i + 1
+            }
+        }
+        sb.toString
+    }
+
+    private class Keyed(val key:String, val s:String)
+            extends Comparable[Keyed] {
+        def compareTo(that:Keyed):Int = {
+            val c = key.compareTo(that.key)
+            if (c!=0) c else s.compareTo(that.s)
+        }
+    }
+
+    /** Sort the strings in place in natural order. */
+    def sort(a:Array[String]) {
+        val keyed = new Array[Keyed](a.length)
+        for (i <- 0 until a.length)
+            keyed(i) = new Keyed(sortKey(a(i)),a(i))
+        Arrays.sort(keyed.asInstanceOf[Array[Object]])
+        for (i <- 0 until a.length)
+            a(i) = keyed(i).s
+    }
+}
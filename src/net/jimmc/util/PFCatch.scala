@@ -6,9 +6,8 @@
 package net.jimmc.util
 
 /** A PartialFunction that catches exceptions.
- * This is intended to use in the react or receive statements
- * of Actor loops, to prevent the actor from terminating when there
- * is an exception in the processing of the react statement.
+ * This is intended to wrap the handler of an EventActor, so that
+ * an exception in processing a message is reported to the user.
  */
 class PFCatch[T](f:PartialFunction[T,Unit], name:String, ui:BasicQueries)
         extends PartialFunction[T,Unit] {
@@ -51,8 +50,8 @@ class PFCatch[T](f:PartialFunction[T,Unit], name:String, ui:BasicQueries)
 }
 
 object PFCatch {
-    /** This convenience method allows us to simply wrap the argument
-     * to "react" with PFCatch(...) to get the desired behavior of
+    /** This convenience method allows us to simply wrap a handler
+     * with PFCatch(...) to get the desired behavior of
      * catching exceptions in the partial function.
      */
     def apply[T](f:PartialFunction[T,Unit]) =  new PFCatch(f, "", null)
@@ -0,0 +1,280 @@
+/* PersistentSeq.scala
+ *
+ * An immutable indexed sequence with cheap updates.
+ */
+
+package net.jimmc.util
+
+/** An immutable sequence supporting indexed access, update, insert and
+ * remove in O(log n) time.
+ * The elements are stored in a B-tree: leaves hold up to MAX_NODE
+ * elements, and branches hold up to MAX_NODE children along with the
+ * cumulative number of elements under each child.
+ * An update copies only the nodes on the path from the root to the
+ * element, so the new sequence shares everything else with the old one.
+ * Like an Array, two sequences are equal only if they are the same object.
+ */
+final class PersistentSeq[A] private (
+        private val root:PersistentSeq.Node, val size:Int) {
+    import PersistentSeq._
+
+    def isEmpty:Boolean = (size==0)
+
+    /** Get the element at the given index. */
+    def apply(index:Int):A = {
+        checkIndex(index,size-1)
+        var node = root
+        var i = index
+        while (node.isInstanceOf[Branch]) {
+            val b = node.asInstanceOf[Branch]
+            val k = b.childContaining(i)
+            i = i - b.childStart(k)
+            node = b.children(k)
+        }
+        node.asInstanceOf[Leaf].items(i).asInstanceOf[A]
+    }
+
+    /** Get a sequence with the element at index replaced by x. */
+    def updated(index:Int, x:A):PersistentSeq[A] = {
+        checkIndex(index,size-1)
+        new PersistentSeq[A](update(root,index,x.asInstanceOf[AnyRef]),size)
+    }
+
+    /** Get a sequence with x inserted before the element at index.
+     * If index is equal to size, x is added at the end. */
+    def insert(index:Int, x:A):PersistentSeq[A] = {
+        checkIndex(index,size)
+        val nodes = PersistentSeq.insert(root,index,x.asInstanceOf[AnyRef])
+        val newRoot =
+            if (nodes.length==1) nodes(0)
+            else Branch(nodes)
+        new PersistentSeq[A](newRoot,size+1)
+    }
+
+    /** Get a sequence with x added at the end. */
+    def append(x:A):PersistentSeq[A] = insert(size,x)
+
+    /** Get a sequence with the element at index removed. */
+    def remove(index:Int):PersistentSeq[A] = {
+        checkIndex(index,size-1)
+        var newRoot = PersistentSeq.remove(root,index)
+        //Drop levels that have only one child
+        while (newRoot.isInstanceOf[Branch] &&
+                newRoot.asInstanceOf[Branch].children.length==1)
+            newRoot = newRoot.asInstanceOf[Branch].children(0)
+        new PersistentSeq[A](newRoot,size-1)
+    }
+
+    def foreach(f:(A)=>Unit) = PersistentSeq.foreach(root,f)
+
+    /** Iterate over the elements in order. */
+    def iterator:Iterator[A] = new Iterator[A] {
+        //Iterator has its own size, so we can't use ours by name in here
+        private val count = PersistentSeq.this.size
+        private var index = 0
+        private var leaf:Array[AnyRef] = null
+        private var leafIndex = 0
+        def hasNext = index<count
+        def next():A = {
+            if (index>=count)
+                throw new NoSuchElementException()
+            if (leaf==null || leafIndex>=leaf.length) {
+                leaf = leafContaining(index)
+                leafIndex = 0
+            }
+            val x = leaf(leafIndex).asInstanceOf[A]
+            leafIndex = leafIndex + 1
+            index = index + 1
+            x
+        }
+    }
+
+    //Get the items array of the leaf whose first element is at index
+    private def leafContaining(index:Int):Array[AnyRef] = {
+        var node = root
+        var i = index
+        while (node.isInstanceOf[Branch]) {
+            val b = node.asInstanceOf[Branch]
+            val k = b.childContaining(i)
+            i = i - b.childStart(k)
+            node = b.children(k)
+        }
+        node.asInstanceOf[Leaf].items
+    }
+
+    def toList:List[A] = iterator.toList
+
+    private def checkIndex(index:Int, max:Int) {
+        if (index<0 || index>max)
+            throw new IndexOutOfBoundsException(
+                    "Index "+index+", size "+size)
+    }
+
+    override def toString() = iterator.mkString("PersistentSeq(",", ",")")
+}
+
+object PersistentSeq {
+    val MAX_NODE = 32
+    val MIN_NODE = MAX_NODE/2
+
+    private[util] sealed abstract class Node {
+        def size:Int
+        def width:Int           //number of items or children
+    }
+
+    private[util] final case class Leaf(items:Array[AnyRef]) extends Node {
+        def size = items.length
+        def width = items.length
+    }
+
+    private[util] final case class Branch(children:Array[Node]) extends Node {
+        //sizes(k) is the number of elements in children 0 to k
+        val sizes:Array[Int] = {
+            val a = new Array[Int](children.length)
+            var total = 0
+            for (k <- 0 until children.length) {
+                total = total + children(k).size
+                a(k) = total
+            }
+            a
+        }
+        def size = sizes(sizes.length-1)
+        def width = children.length
+
+        def childStart(k:Int):Int = if (k==0) 0 else sizes(k-1)
+
+        //Get the index of the child containing element i
+        def childContaining(i:Int):Int = {
+            var lo = 0
+            var hi = sizes.length - 1
+            while (lo<hi) {
+                val mid = (lo + hi)/2
+                if (sizes(mid)>i) hi = mid else lo = mid + 1
+            }
+            lo
+        }
+    }
+
+    private val emptyLeaf = Leaf(new Array[AnyRef](0))
+
+    def empty[A]:PersistentSeq[A] = new PersistentSeq[A](emptyLeaf,0)
+
+    /** Create a sequence containing the given elements. */
+    def apply[A](xs:Seq[A]):PersistentSeq[A] = {
+        val n = xs.length
+        if (n==0)
+            return empty[A]
+        //Build full leaves, then full branches above them
+        var level:Array[Node] = xs.iterator.grouped(MAX_NODE).map(g =>
+                Leaf(g.map(_.asInstanceOf[AnyRef]).toArray).asInstanceOf[Node]).
+                toArray
+        while (level.length>1) {
+            level = level.grouped(MAX_NODE).map(g =>
+                    Branch(g).asInstanceOf[Node]).toArray
+        }
+        new PersistentSeq[A](level(0),n)
+    }
+
+    private def update(node:Node, i:Int, x:AnyRef):Node = node match {
+        case Leaf(items) =>
+            val a = items.clone
+            a(i) = x
+            Leaf(a)
+        case b:Branch =>
+            val k = b.childContaining(i)
+            val a = b.children.clone
+            a(k) = update(a(k),i-b.childStart(k),x)
+            Branch(a)
+    }
+
+    //Insert into the node, return either the new node or, if it had
+    //to be split, the two nodes it was split into.
+    private def insert(node:Node, i:Int, x:AnyRef):Array[Node] = node match {
+        case Leaf(items) =>
+            val a = new Array[AnyRef](items.length+1)
+            Array.copy(items,0,a,0,i)
+            a(i) = x
+            Array.copy(items,i,a,i+1,items.length-i)
+            if (a.length<=MAX_NODE)
+                Array(Leaf(a))
+            else {
+                val (a1, a2) = a.splitAt(a.length/2)
+                Array(Leaf(a1),Leaf(a2))
+            }
+        case b:Branch =>
+            //Insert at the end of a child rather than the start of the next
+            val k = if (i==0) 0 else b.childContaining(i-1)
+            val newNodes = insert(b.children(k),i-b.childStart(k),x)
+            val a = replaceChildren(b.children,k,1,newNodes)
+            if (a.length<=MAX_NODE)
+                Array(Branch(a))
+            else {
+                val (a1, a2) = a.splitAt(a.length/2)
+                Array(Branch(a1),Branch(a2))
+            }
+    }
+
+    //Remove from the node; the result may be smaller than MIN_NODE,
+    //in which case the caller merges it with a sibling.
+    private def remove(node:Node, i:Int):Node = node match {
+        case Leaf(items) =>
+            val a = new Array[AnyRef](items.length-1)
+            Array.copy(items,0,a,0,i)
+            Array.copy(items,i+1,a,i,items.length-i-1)
+            Leaf(a)
+        case b:Branch =>
+            val k = b.childContaining(i)
+            val child = remove(b.children(k),i-b.childStart(k))
+            val a =
+                if (child.size==0)
+                    replaceChildren(b.children,k,1,Array())
+                else if (child.width<MIN_NODE && b.children.length>1) {
+                    //Merge with a neighbor, splitting again if too big
+                    val j = if (k>0) k-1 else k+1
+                    val (left, right) =
+                        if (j<k) (b.children(j),child)
+                        else (child,b.children(j))
+                    replaceChildren(b.children,k.min(j),2,merge(left,right))
+                } else
+                    replaceChildren(b.children,k,1,Array(child))
+            if (a.length==0) emptyLeaf else Branch(a)
+    }
+
+    //Merge two neighboring nodes at the same level into one or two nodes
+    private def merge(left:Node, right:Node):Array[Node] = {
+        (left, right) match {
+            case (Leaf(a), Leaf(b)) =>
+                val c = a ++ b
+                if (c.length<=MAX_NODE) Array(Leaf(c))
+                else {
+                    val (c1, c2) = c.splitAt(c.length/2)
+                    Array(Leaf(c1),Leaf(c2))
+                }
+            case (l:Branch, r:Branch) =>
+                val c = l.children ++ r.children
+                if (c.length<=MAX_NODE) Array(Branch(c))
+                else {
+                    val (c1, c2) = c.splitAt(c.length/2)
+                    Array(Branch(c1),Branch(c2))
+                }
+            case _ =>
+                throw new IllegalStateException("Unbalanced PersistentSeq")
+        }
+    }
+
+    //Replace count children starting at k with the given new nodes
+    private def replaceChildren(children:Array[Node], k:Int, count:Int,
+            newNodes:Array[Node]):Array[Node] = {
+        val a = new Array[Node](children.length - count + newNodes.length)
+        Array.copy(children,0,a,0,k)
+        Array.copy(newNodes,0,a,k,newNodes.length)
+        Array.copy(children,k+count,a,k+newNodes.length,
+                children.length-k-count)
+        a
+    }
+
+    private def foreach[A](node:Node, f:(A)=>Unit):Unit = node match {
+        case Leaf(items) => items.foreach(x => f(x.asInstanceOf[A]))
+        case b:Branch => b.children.foreach(foreach(_,f))
+    }
+}
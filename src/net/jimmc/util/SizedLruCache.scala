@@ -0,0 +1,107 @@
+/* SizedLruCache.scala
+ *
+ * A least-recently-used cache bounded by the total cost of its entries.
+ */
+
+package net.jimmc.util
+
+import java.util.LinkedHashMap
+
+/** A thread-safe LRU cache whose capacity is measured as the sum of
+ * the costs of its entries rather than the number of entries.
+ * The cost of an entry is supplied by the caller when the entry is added,
+ * typically the number of bytes it takes in memory.
+ * When adding an entry pushes the total cost above maxCost, the least
+ * recently used entries are evicted until the total fits again.
+ */
+class SizedLruCache[K,V](val name:String, val maxCost:Long) {
+    private case class Entry(value:V, cost:Long)
+
+    //LinkedHashMap in access order gives us O(1) lookup and LRU ordering
+    private val map = new LinkedHashMap[K,Entry](64,0.75f,true)
+    private var totalCost = 0L
+
+    private var hitCount = 0L
+    private var missCount = 0L
+    private var evictionCount = 0L
+
+    /** Get the value for the key, or None if not in the cache.
+     * A successful get makes the entry the most recently used one.
+     */
+    def get(key:K):Option[V] = synchronized {
+        val e = map.get(key)
+        if (e==null) {
+            missCount = missCount + 1
+            None
+        } else {
+            hitCount = hitCount + 1
+            Some(e.value)
+        }
+    }
+
+    /** True if the key is in the cache.  Does not change the LRU order
+     * or the hit and miss counts. */
+    def contains(key:K):Boolean = synchronized { map.containsKey(key) }
+
+    /** Add an entry to the cache, replacing any previous entry for the key.
+     * An entry that costs more than the whole cache is not added.
+     */
+    def put(key:K, value:V, cost:Long) = synchronized {
+        val old = map.remove(key)
+        if (old!=null)
+            totalCost = totalCost - old.cost
+        if (cost<=maxCost) {
+            map.put(key,Entry(value,cost))
+            totalCost = totalCost + cost
+            trim()
+        }
+    }
+
+    /** Remove the entry for the key, if present. */
+    def remove(key:K) = synchronized {
+        val old = map.remove(key)
+        if (old!=null)
+            totalCost = totalCost - old.cost
+    }
+
+    /** Remove all entries whose keys match the given predicate. */
+    def removeIf(p:(K)=>Boolean) = synchronized {
+        val it = map.entrySet.iterator
+        while (it.hasNext) {
+            val e = it.next
+            if (p(e.getKey)) {
+                totalCost = totalCost - e.getValue.cost
+                it.remove()
+            }
+        }
+    }
+
+    /** Remove everything from the cache. */
+    def clear() = synchronized {
+        map.clear()
+        totalCost = 0
+    }
+
+    //Evict least recently used entries until we are within budget
+    private def trim() {
+        val it = map.entrySet.iterator
+        while (totalCost>maxCost && it.hasNext) {
+            val e = it.next
+            totalCost = totalCost - e.getValue.cost
+            it.remove()
+            evictionCount = evictionCount + 1
+        }
+    }
+
+    def size:Int = synchronized { map.size }
+    def cost:Long = synchronized { totalCost }
+    def hits:Long = synchronized { hitCount }
+    def misses:Long = synchronized { missCount }
+    def evictions:Long = synchronized { evictionCount }
+
+    override def toString() = synchronized {
+        name+": "+map.size+" entries, "+totalCost+" of "+maxCost+
+            " bytes, hits="+hitCount+" misses="+missCount+
+            " evictions="+evictionCount
+    }
+}
@@ -69,10 +69,12 @@ Boston, MA  02111-1307, USA.
  */
 package net.jimmc.util
 
-import java.io.BufferedInputStream
-import java.io.DataInputStream
+import java.io.EOFException
 import java.io.File
 import java.io.FileInputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.util.Arrays
 import java.util.TimeZone
 import java.util.Date
 import java.util.GregorianCalendar
@@ -251,12 +253,12 @@ object ZoneInfo {
     cal.setTimeZone(tz)
     fmt.setCalendar(cal)
 
-    private def dumplcl(time:Int):String = {
+    private def dumplcl(time:Long):String = {
       //TZtm t = tz.localtime(time)
       //return t.toString() + " isdst=" + t.tm_isdst
       return fmt.format(new Date(time * 1000L))
     }
-    private def dump(time:Int) {
+    private def dump(time:Long) {
       val t = tz.localtime(time)
       println(zone + ' ' + tz.gmtime(time) + " = " + dumplcl(time))
     }
@@ -300,6 +302,209 @@ object ZoneInfo {
     }
   }
 
+  //Parsed zones, keyed by canonical file, with the file's modified time
+  private val registry = new SizedLruCache[File,(Long,ZoneInfo)](
+          "ZoneInfo",100)
+
+  /** Get the ZoneInfo for a tzfile.  Each file is read once; later
+      calls for the same file (or a link to it) get a copy of the
+      zone we already parsed, unless the file has changed.
+      The copy shares the transition tables, but the caller may
+      change its ID and raw offset.
+   */
+  def forFile(f:File):ZoneInfo /*throws IOException*/ = {
+    val cf = f.getCanonicalFile
+    val modified = cf.lastModified
+    val cached = registry.get(cf)
+    val zone =
+      if (cached.isDefined && cached.get._1==modified)
+        cached.get._2
+      else {
+        val z = new ZoneInfo(cf)
+        registry.put(cf,(modified,z),1)
+        z
+      }
+    zone.clone().asInstanceOf[ZoneInfo]
+  }
+
+  private def floorDiv(a:Long, b:Long):Long =
+    if (a>=0) a/b else -((-a+b-1)/b)
+
+  /** Days since 1970 for a Gregorian date.  Month is 1-12. */
+  private[util] def daysFromCivil(year:Int, month:Int, day:Int):Long = {
+    val y:Long = if (month<=2) year - 1 else year
+    val era = floorDiv(y,400)
+    val yoe = y - era*400
+    val mp = if (month>2) month - 3 else month + 9
+    val doy = (153*mp + 2)/5 + day - 1
+    val doe = yoe*365 + yoe/4 - yoe/100 + doy
+    era*146097 + doe - 719468
+  }
+
+  /** The Gregorian year containing a day, given as days since 1970. */
+  private[util] def yearFromDays(days:Long):Int = {
+    val z = days + 719468
+    val era = floorDiv(z,146097)
+    val doe = z - era*146097
+    val yoe = (doe - doe/1460 + doe/36524 - doe/146096)/365
+    val doy = doe - (365*yoe + yoe/4 - yoe/100)
+    val mp = (5*doy + 2)/153
+    val y = yoe + era*400 + (if (mp>=10) 1 else 0)
+    y.toInt
+  }
+
+  private def isLeapYear(y:Int) = (y%4==0 && (y%100!=0 || y%400==0))
+
+  /** The rule from the POSIX TZ string at the end of a version 2 or 3
+      tzfile, such as "EST5EDT,M3.2.0,M11.1.0", which gives local time
+      after the last transition in the file.
+      @throws IllegalArgumentException if we can't parse the string.
+   */
+  private[util] class PosixRule(spec:String) {
+    //A start or end date: Jn, n or Mm.w.d
+    private case class DateRule(kind:Char, m:Int, w:Int, d:Int)
+
+    private var pos = 0
+    val stdType:TZType = {
+      val name = parseName()
+      new TZType(name,-parseTime(),false)
+    }
+    val dstType:TZType =
+      if (pos>=spec.length) null
+      else {
+        val name = parseName()
+        val offset =
+          if (pos<spec.length && spec.charAt(pos)!=',') -parseTime()
+          else stdType.offset + SECSPERHOUR
+        new TZType(name,offset,true)
+      }
+    //Without explicit rules, use the US rules
+    private val (startRule, startTime, endRule, endTime) =
+      if (dstType==null) (null, 0, null, 0)
+      else if (pos>=spec.length) (DateRule('M',3,2,0), 2*SECSPERHOUR,
+                                  DateRule('M',11,1,0), 2*SECSPERHOUR)
+      else {
+        expect(',')
+        val sr = parseDate()
+        val st = if (peek=='/') { pos = pos + 1; parseTime() }
+                 else 2*SECSPERHOUR
+        expect(',')
+        val er = parseDate()
+        val et = if (peek=='/') { pos = pos + 1; parseTime() }
+                 else 2*SECSPERHOUR
+        (sr, st, er, et)
+      }
+    if (pos<spec.length)
+      bad()
+
+    private def bad() =
+      throw new IllegalArgumentException("Bad TZ string: "+spec)
+
+    private def peek:Char = if (pos<spec.length) spec.charAt(pos) else 0
+
+    private def expect(c:Char) {
+      if (peek!=c)
+        bad()
+      pos = pos + 1
+    }
+
+    //A zone abbreviation: letters, or anything in angle brackets
+    private def parseName():String = {
+      val start = pos
+      if (peek=='<') {
+        while (pos<spec.length && spec.charAt(pos)!='>')
+          pos = pos + 1
+        expect('>')
+        return spec.substring(start+1,pos-1)
+      }
+      while (Character.isLetter(peek))
+        pos = pos + 1
+      if (pos-start<3)
+        bad()
+      spec.substring(start,pos)
+    }
+
+    private def parseNumber():Int = {
+      val start = pos
+      while (Character.isDigit(peek))
+        pos = pos + 1
+      if (pos==start)
+        bad()
+      Integer.parseInt(spec.substring(start,pos))
+    }
+
+    //[+-]hh[:mm[:ss]], in seconds
+    private def parseTime():Int = {
+      val sign = peek match {
+        case '-' => pos = pos + 1; -1
+        case '+' => pos = pos + 1; 1
+        case _ => 1
+      }
+      var secs = parseNumber()*SECSPERHOUR
+      if (peek==':') {
+        pos = pos + 1
+        secs = secs + parseNumber()*SECSPERMIN
+        if (peek==':') {
+          pos = pos + 1
+          secs = secs + parseNumber()
+        }
+      }
+      sign*secs
+    }
+
+    private def parseDate():DateRule = {
+      if (peek=='J') {
+        pos = pos + 1
+        DateRule('J',parseNumber(),0,0)
+      } else if (peek=='M') {
+        pos = pos + 1
+        val m = parseNumber()
+        expect('.')
+        val w = parseNumber()
+        expect('.')
+        val d = parseNumber()
+        if (m<1 || m>12 || w<1 || w>5 || d>6)
+          bad()
+        DateRule('M',m,w,d)
+      } else
+        DateRule('n',parseNumber(),0,0)
+    }
+
+    //The day, as days since 1970, on which the rule falls in a year
+    private def ruleDay(year:Int, r:DateRule):Long = r.kind match {
+      case 'J' =>         //1-365, never counting Feb 29
+        val jan1 = daysFromCivil(year,1,1)
+        jan1 + r.m - 1 + (if (isLeapYear(year) && r.m>=60) 1 else 0)
+      case 'n' =>         //0-365, counting Feb 29
+        daysFromCivil(year,1,1) + r.m
+      case _ =>           //day d of week w of month m, week 5 is last
+        val first = daysFromCivil(year,r.m,1)
+        val firstWday = floorDiv(first + EPOCH_WDAY,DAYSPERWEEK)
+        val wday1 = (first + EPOCH_WDAY) - firstWday*DAYSPERWEEK
+        var day = (r.d - wday1 + DAYSPERWEEK) % DAYSPERWEEK +
+                (r.w - 1)*DAYSPERWEEK
+        val nextMonth = if (r.m==12) daysFromCivil(year+1,1,1)
+                        else daysFromCivil(year,r.m+1,1)
+        while (first + day >= nextMonth)
+          day = day - DAYSPERWEEK
+        first + day
+    }
+
+    /** The zone type in effect at a time in seconds since 1970. */
+    def getType(clock:Long):TZType = {
+      if (dstType==null)
+        return stdType
+      val year = yearFromDays(floorDiv(clock + stdType.offset,SECSPERDAY))
+      val start = ruleDay(year,startRule)*SECSPERDAY + startTime -
+              stdType.offset
+      val end = ruleDay(year,endRule)*SECSPERDAY + endTime - dstType.offset
+      val isDst =
+        if (start<end) (clock>=start && clock<end)  //northern hemisphere
+        else !(clock>=end && clock<start)           //southern hemisphere
+      if (isDst) dstType else stdType
+    }
+  }
+
   def main(argv:Array[String]) /*throws Exception*/ {
     val tz = new ZoneInfo("EST5EDT")
     val now = (System.currentTimeMillis() / 1000).asInstanceOf[Int]
@@ -351,7 +556,10 @@ object ZoneInfo {
     larger and larger as required, until a better solution is invented.  
     There is no point at which things suddenly break.
     <p>
-    I have not yet implemented the implicitly extended table, so this
+    Version 2 and later tzfiles solve this with a second copy of the
+    tables using 64-bit times, followed by a POSIX TZ string giving the
+    rules for times after the last transition.  We read those when
+    they are present; for version 1 files, this
     version will break with regards to determining daylight savings time
     and accumulating leapseconds beginning in 2039.  The main purpose
     of this implementation is to point out deficiences in the
@@ -371,79 +579,131 @@ object ZoneInfo {
  */
 class ZoneInfo(f:File) extends TimeZone /*throws IOException*/ {
   import ZoneInfo._     //pick up everything from our companion object
-  private var transTimes:Array[Int] = _	// transition times
+  private var transTimes:Array[Long] = _	// transition times, sorted
   private var transTypes:Array[Byte] = _
         // timezone description for each transition
   private var tz:Array[TZType] = _		// timezone descriptions
-  private var leapSecs:Array[Int] = _	// leapseconds
+  private var leapSecs:Array[Long] = _
+        // leapseconds, as pairs of transition time and correction
+  private var rule:PosixRule = _
+        // local time after the last transition, or null
   private var rawoff = 0
   private var normaltz:TZType = _
 
   init(f)
-  /** Initializes timezone info from a File in the tzfile format. */
+  /** Initializes timezone info from a File in the tzfile format.
+      Version 2 and 3 files have a second copy of the data with 64-bit
+      times, followed by a POSIX TZ string for times after the last
+      transition; we use those when they are there.
+   */
   private def init(f:File) /*throws IOException*/ {
-    val ds = new DataInputStream(new BufferedInputStream(
-    	new FileInputStream(f)))
-
+    val buf = ByteBuffer.wrap(readFully(f))
     try {
-      // read header
-      ds.skip(28)
-      var leapcnt = ds.readInt()
-      val timecnt = ds.readInt()
-      val typecnt = ds.readInt()
-      val charcnt = ds.readInt()
-
-      // load DST transition data
-      transTimes = new Array[Int](timecnt)
-      for (i <- 0 until timecnt)
-	transTimes(i) = ds.readInt()
-      transTypes = new Array[Byte](timecnt)
-      ds.readFully(transTypes)
-
-      // load TZ type data
-      val offset = new Array[Int](typecnt)
-      val dst = new Array[Byte](typecnt)
-      val idx = new Array[Byte](typecnt)
-      for (i <- 0 until typecnt) {
-	offset(i) = ds.readInt()
-	dst(i) = ds.readByte()
-	idx(i) = ds.readByte()
-      }
-      val str = new Array[Byte](charcnt)
-      ds.readFully(str)
-
-      // convert type data
-      tz = new Array[TZType](typecnt)
-      for (i <- 0 until typecnt) {
-	// find string
-	val pos = idx(i)
-	var end:Int = pos
-	while (str(end) != 0)
-            end = end + 1
-	tz(i) = new TZType(new String(str,pos,end-pos),offset(i),dst(i) != 0)
-      }
-
-      // load leap seconds table
-      leapSecs = new Array[Int](leapcnt * 2)
-      var i = 0
-      while (leapcnt > 0) {
-	leapSecs(i) = ds.readInt()
-        i = i + 1
-	leapSecs(i) = ds.readInt()
-        i = i + 1
-        leapcnt = leapcnt - 1
+      val version = buf.get(4)
+      readData(buf,4)
+      if (version>='2') {
+        //Skip to the 64-bit data
+        readData(buf,8)
+        val footer = new String(buf.array,buf.position,buf.remaining,
+                "US-ASCII").trim
+        rule =
+          if (footer=="") null
+          else try {
+            new PosixRule(footer)
+          } catch {
+            case ex:IllegalArgumentException => null
+              //use the last transition for all later times
+          }
       }
+    } catch {
+      case ex:java.nio.BufferUnderflowException =>
+        throw new EOFException("Truncated tzfile "+f)
+      case ex:IndexOutOfBoundsException =>
+        throw new IOException("Bad tzfile "+f)
+      case ex:IllegalArgumentException =>
+        throw new IOException("Bad tzfile "+f)     //bad position
     }
-    finally { ds.close() }
 
     // find first standard type
     var n = 0
-    while (tz(n).isdst && n < tz.length)
+    while (n < tz.length - 1 && tz(n).isdst)
       n = n + 1
     normaltz = tz(n)
     setID(normaltz.name)
   }
 
+  private def readFully(f:File):Array[Byte] = {
+    val in = new FileInputStream(f)
+    try {
+      val a = new Array[Byte](f.length.toInt)
+      var n = 0
+      while (n<a.length) {
+        val k = in.read(a,n,a.length-n)
+        if (k<0)
+          throw new EOFException("Truncated tzfile "+f)
+        n = n + k
+      }
+      a
+    } finally { in.close() }
+  }
+
+  //Read the header and data block starting at the current position,
+  //with times of timeSize bytes, leaving the position after the block.
+  private def readData(buf:ByteBuffer, timeSize:Int) {
+    def readTime():Long =
+      if (timeSize==8) buf.getLong() else buf.getInt().toLong
+
+    // read header
+    buf.position(buf.position + 20)     //magic, version, reserved
+    val isutcnt = buf.getInt()
+    val isstdcnt = buf.getInt()
+    val leapcnt = buf.getInt()
+    val timecnt = buf.getInt()
+    val typecnt = buf.getInt()
+    val charcnt = buf.getInt()
+
+    // load DST transition data
+    transTimes = new Array[Long](timecnt)
+    for (i <- 0 until timecnt)
+      transTimes(i) = readTime()
+    transTypes = new Array[Byte](timecnt)
+    buf.get(transTypes)
+
+    // load TZ type data
+    val offset = new Array[Int](typecnt)
+    val dst = new Array[Byte](typecnt)
+    val idx = new Array[Int](typecnt)
+    for (i <- 0 until typecnt) {
+      offset(i) = buf.getInt()
+      dst(i) = buf.get()
+      idx(i) = buf.get() & 0xff
+    }
+    val str = new Array[Byte](charcnt)
+    buf.get(str)
+
+    // convert type data
+    tz = new Array[TZType](typecnt)
+    for (i <- 0 until typecnt) {
+      // find string
+      val pos = idx(i)
+      var end:Int = pos
+      while (end < str.length && str(end) != 0)
+        end = end + 1
+      tz(i) = new TZType(new String(str,pos,end-pos,"US-ASCII"),
+              offset(i),dst(i) != 0)
+    }
+
+    // load leap seconds table
+    leapSecs = new Array[Long](leapcnt * 2)
+    for (i <- 0 until leapcnt) {
+      leapSecs(2*i) = readTime()
+      leapSecs(2*i+1) = buf.getInt()
+    }
+
+    // skip standard/wall and UT/local indicators
+    buf.position(buf.position + isstdcnt + isutcnt)
+  }
+
   /** Return the ZoneInfo for local time on this machine.  For unix,
      we read /etc/localtime, which is a link to the proper zoneinfo file. */
   def this() /*throws IOException*/ {
@@ -488,14 +748,15 @@ class ZoneInfo(f:File) extends TimeZone /*throws IOException*/ {
 
   /** Return the offset from UT for an epoch time. */
   override def getOffset(ts:Long):Int = {
-    var offset = getTZ(ts/1000).offset
+    val clock = floorDiv(ts,1000)
+    var offset = getTZ(clock).offset
     var y = leapSecs.length - 2
     var brk = false
     while (y >= 0 && !brk) {
       val ls_trans = leapSecs(y)
       val ls_corr = leapSecs(y+1)
-      if (ts >= ls_trans) {
-	offset = offset - ls_corr
+      if (clock >= ls_trans) {
+	offset = offset - ls_corr.toInt
 	brk = true
       }
       else
@@ -507,7 +768,7 @@ class ZoneInfo(f:File) extends TimeZone /*throws IOException*/ {
   /** Return true if a particular instant is considered part of daylight
       time in this timezone. */
   def inDaylightTime(d:Date):Boolean = {
-    val tz = getTZ((d.getTime()/1000).asInstanceOf[Int])
+    val tz = getTZ(floorDiv(d.getTime(),1000))
     //System.err.println("isdst = " + tz.isdst)
     return tz.isdst
   }
@@ -553,17 +814,18 @@ class ZoneInfo(f:File) extends TimeZone /*throws IOException*/ {
     
   /** Lookup which timezone a given instant should use.  */
   private def getTZ(clock:Long):TZType = {
-    // FIXME: use binary search
-    if (transTimes.length > 0 && clock >= transTimes(0)) {
-      var i = 1
-      var brk = false
-      while (i < transTimes.length && !brk) {
-        if (clock < transTimes(i)) brk=true
-        else i = i + 1
-      }
-      return this.tz(transTypes(i - 1))
-    }
-    return normaltz
+    val n = transTimes.length
+    if (n == 0)
+      return if (rule != null) rule.getType(clock) else normaltz
+    if (clock < transTimes(0))
+      return normaltz
+    // find the last transition at or before clock
+    var i = Arrays.binarySearch(transTimes,clock)
+    if (i < 0)
+      i = -i - 2
+    if (i == n - 1 && rule != null)
+      return rule.getType(clock)
+    return this.tz(transTypes(i) & 0xff)
   }
 
   /** Compute local time from seconds since the epoch.
@@ -637,7 +899,7 @@ class ZoneInfo(f:File) extends TimeZone /*throws IOException*/ {
       if (clock >= ls_trans) {
 	if (clock == ls_trans)
 	  hit = ((y == 0 && ls_corr > 0) || ls_corr > leapSecs(y-1))
-	offset = offset - ls_corr
+	offset = offset - ls_corr.toInt
 	brk = true
       } else
         y = y - 2
@@ -0,0 +1,48 @@
+package net.jimmc.mimprint
+
+import org.scalatest.Suite
+
+import java.io.File
+import java.io.FileWriter
+
+class TestFileClassifier extends Suite {
+
+    private def classify(text:String):Int = {
+        val f = File.createTempFile("TestFileClassifier",".mpr")
+        try {
+            val out = new FileWriter(f)
+            out.write(text)
+            out.close()
+            FileClassifier.classify(f)
+        } finally {
+            f.delete()
+        }
+    }
+
+    def testPlayList() {
+        assert(FileClassifier.PLAYLIST===classify(
+                "## list comment\n#item comment\n-base=/tmp\na.jpg;+r\n-empty\n"))
+        assert(FileClassifier.PLAYLIST===classify(""))
+    }
+
+    def testTemplate() {
+        assert(FileClassifier.TEMPLATE===classify(
+                "<?xml version=\"1.0\"?>\n<page width=\"8.5\" height=\"11\">"))
+    }
+
+    def testGarbage() {
+        assert(FileClassifier.UNKNOWN===classify("a.jpg;+x\n"))
+        assert(FileClassifier.UNKNOWN===classify("<html></html>"))
+        assert(FileClassifier.UNKNOWN===classify("\u0001\u0002binary"))
+    }
+
+    def testLongPlayList() {
+        //Only the start of the file is looked at, so an error past
+        //that is not seen.
+        val sb = new StringBuilder
+        for (i <- 0 until 1000)
+            sb.append("image"+i+".jpg\n")
+        sb.append("-bogus\nlast.jpg\n")
+        assert(FileClassifier.PLAYLIST===classify(sb.toString))
+    }
+}
@@ -0,0 +1,39 @@
+package net.jimmc.mimprint
+
+import org.scalatest.Suite
+
+import java.awt.image.BufferedImage
+import java.io.File
+import javax.imageio.ImageIO
+
+class TestImageHeader extends Suite {
+
+    private def checkFormat(format:String) {
+        val f = File.createTempFile("TestImageHeader","."+format)
+        try {
+            val image = new BufferedImage(37,21,BufferedImage.TYPE_INT_RGB)
+            assert(ImageIO.write(image,format,f))
+            assert(Some((37,21))===ImageHeader.readSize(f))
+        } finally {
+            f.delete()
+        }
+    }
+
+    def testJpeg() = checkFormat("jpg")
+
+    def testPng() = checkFormat("png")
+
+    def testGif() = checkFormat("gif")
+
+    def testNotAnImage() {
+        val f = File.createTempFile("TestImageHeader",".txt")
+        try {
+            val out = new java.io.FileWriter(f)
+            out.write("#not an image\n")
+            out.close()
+            assert(None===ImageHeader.readSize(f))
+        } finally {
+            f.delete()
+        }
+    }
+}
@@ -2,6 +2,7 @@ package net.jimmc.mimprint
 
 import org.scalatest.Suite
 
+import java.io.File
 import java.io.PrintWriter
 import java.io.StringWriter
 
@@ -52,6 +53,22 @@ class TestPlayItem extends Suite {
         assert(!item2.isEmpty)
     }
 
+    def testSharedBaseDir() {
+        val tmp = new File("/tmp")
+        val item1 = new PlayItem(Nil,tmp,"a/foo.jpg",0).usingSelfBase()
+        val item2 = new PlayItem(Nil,tmp,"a/bar.jpg",0).usingSelfBase()
+        assert("foo.jpg"===item1.getFileName)
+        assert(item1.getBaseDir eq item2.getBaseDir)
+        val item3 = new PlayItem(Nil,tmp,"b/foo.jpg",0).usingSelfBase()
+        assert(item1.getBaseDir ne item3.getBaseDir)
+    }
+
+    def testRotationInfoLine() {
+        val lines = List(-1,0,1,2).map(
+                new PlayItem(null,null,"foo",_).getImageInfoLine())
+        assert(List("foo;-r","foo","foo;+r","foo;+rr")===lines)
+    }
+
     def testApply() {
         val lines = List("#comment1","foo.jpg")
         val item1 = PlayItem(lines, null)
@@ -0,0 +1,41 @@
+package net.jimmc.mimprint
+
+import java.io.File
+
+import org.scalatest.Suite
+
+class TestPlayList extends Suite {
+
+    private def makeList(n:Int):PlayList = {
+        val names = (0 until n).map("image"+_+".jpg").toArray
+        PlayList(null,new File("/tmp"),names,0,n)
+    }
+
+    def testVersionIncreases() {
+        val list0 = makeList(3)
+        val list1 =
+                list0.addItem(new PlayItem(null,new File("/tmp"),"x.jpg",0))
+        val list2 = list1.rotateItem(0,1)
+        val list3 = list2.removeItem(1)
+        assert(list0.version<list1.version)
+        assert(list1.version<list2.version)
+        assert(list2.version<list3.version)
+        assert(list3.newVersion().version>list3.version)
+    }
+
+    def testEquals() {
+        val list = makeList(3)
+        assert(list==list)
+        assert(list.hashCode==list.hashCode)
+        assert(list!=list.rotateItem(0,1))
+        assert(list!=list.newVersion())
+        assert(list.ensureSize(2) eq list)
+    }
+
+    def testNewVersionSameContents() {
+        val list = makeList(3)
+        val copy = list.newVersion()
+        assert(3===copy.size)
+        assert(list.getFileNames.toList===copy.getFileNames.toList)
+    }
+}
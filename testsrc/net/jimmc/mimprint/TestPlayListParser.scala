@@ -0,0 +1,72 @@
+package net.jimmc.mimprint
+
+import org.scalatest.Suite
+
+import java.io.File
+import java.io.StringReader
+
+class TestPlayListParser extends Suite {
+
+    private def parse(text:String):(List[String],List[PlayItem]) = {
+        val parser = new PlayListParser(new StringReader(text),new File("b"))
+        var items:List[PlayItem] = Nil
+        var item = parser.nextItem()
+        while (item!=null) {
+            items = item :: items
+            item = parser.nextItem()
+        }
+        (parser.listComments, items.reverse)
+    }
+
+    def testListComments() {
+        val (comments, items) = parse("## one\n  ## two\r\n#item\nfoo.jpg\n")
+        assert(List("## one","  ## two")===comments)
+        assert(1===items.length)
+        assert(List("#item")===items(0).comments)
+        assert("foo.jpg"===items(0).fileName)
+    }
+
+    def testOptions() {
+        val (_, items) = parse("a.jpg;+r\r b.jpg ; -r ;\n_c;;+rr\n.d\n")
+        assert(List("a.jpg","b.jpg ","_c",".d")===items.map(_.fileName))
+        assert(List(1,-1,2,0)===items.map(_.rotFlag))
+    }
+
+    def testBaseAndEmpty() {
+        val (_, items) = parse("-base=/x/y extra\nfoo.jpg\n-empty\nbar.jpg")
+        assert(3===items.length)
+        assert(new File("/x/y")===items(0).baseDir)
+        assert(null==items(1).fileName)
+        assert(new File("/x/y")===items(1).baseDir)
+        assert("bar.jpg"===items(2).fileName)
+    }
+
+    def testMatchesPlayItem() {
+        val lines = List("#c1","  -base=dir  ","# c2","\tfoo.jpg;+rr ")
+        val (_, items) = parse(lines.mkString("\n"))
+        assert(PlayItem(lines,new File("b"))==items(0))
+    }
+
+    def testTrailingLinesIgnored() {
+        val (_, items) = parse("foo.jpg\n#trailing\n+junk\n")
+        assert(1===items.length)
+    }
+
+    def testErrors() {
+        expectError("Line 3: Bad item line ''","foo.jpg\n#c\n\nbar.jpg\n")
+        expectError("Line 2: Unknown image file option ' x'",
+                "foo.jpg\nbar.jpg;+r; x\n")
+        expectError("Line 1: Unknown option line -foo","-foo\nbar.jpg\n")
+        expectError("Line 1: No value for -base option","-base= x\nbar.jpg\n")
+        expectError("Attempt to load xml file as PlayList","<?xml x?>\n")
+    }
+
+    private def expectError(msg:String, text:String) {
+        try {
+            parse(text)
+            fail("Expected error: "+msg)
+        } catch {
+            case ex:IllegalArgumentException => assert(msg===ex.getMessage)
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package net.jimmc.mimprint
+
+import org.scalatest.Suite
+
+import java.io.File
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import scala.collection.mutable.ListBuffer
+
+class TestPlayView extends Suite {
+
+    //Records the indexes of the items it is told were added
+    class Recorder(tracker:PlayListTracker, n:Int) extends PlayView(tracker) {
+        val added = new ListBuffer[Int]
+        val done = new CountDownLatch(n)
+        protected def playListInit(m:PlayListInit) {}
+        protected def playListAddItem(m:PlayListAddItem) {
+            added.synchronized { added += m.index }
+            done.countDown()
+        }
+        protected def playListRemoveItem(m:PlayListRemoveItem) {}
+        protected def playListChangeItem(m:PlayListChangeItem) {}
+        protected def playListUpdateItem(m:PlayListUpdateItem) {}
+        protected def playListSelectItem(m:PlayListSelectItem) {}
+        protected def playListChangeList(m:PlayListChangeList) {}
+        protected def playListAppendItems(m:PlayListAppendItems) {}
+        def received = added.synchronized { added.toList }
+    }
+
+    def testConsecutiveChanges() {
+        val tracker = new PlayListTracker(null)     //not started
+        val view = new Recorder(tracker,2)
+        val dir = new File("/tmp")
+        val list0 = PlayList(null,dir,Array("a.jpg"),0,1)
+        val list1 = list0.addItem(new PlayItem(null,dir,"b.jpg",0))
+        val list2 = list1.addItem(new PlayItem(null,dir,"c.jpg",0))
+        view ! PlayListInit(tracker,list0)
+        view ! PlayListAddItem(tracker,list0,list1,1)
+        view ! PlayListAddItem(tracker,list1,list2,2)
+        view.start()
+        assert(view.done.await(10,TimeUnit.SECONDS))
+        assert(List(1,2)===view.received)
+    }
+}
@@ -0,0 +1,94 @@
+package net.jimmc.util
+
+import org.scalatest.Suite
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import scala.collection.mutable.ListBuffer
+
+class TestEventActor extends Suite {
+
+    //Records the messages it gets; conflates messages that are
+    //("latest",n) pairs.
+    class Recorder(n:Int, cap:Int) extends EventActor(cap) {
+        def this(n:Int) = this(n,EventActor.DEFAULT_CAPACITY)
+        val got = new ListBuffer[Any]
+        val done = new CountDownLatch(n)
+        protected def handler:PartialFunction[Any,Unit] = {
+            case m =>
+                got.synchronized { got += m }
+                done.countDown()
+        }
+        override protected def conflationKey(msg:Any):Any = msg match {
+            case ("latest", _) => "latest"
+            case _ => null
+        }
+        def received = got.synchronized { got.toList }
+    }
+
+    def testOrder() {
+        val r = new Recorder(100)
+        r.start()
+        for (i <- 0 until 100)
+            r ! i
+        assert(r.done.await(10,TimeUnit.SECONDS))
+        assert((0 until 100).toList===r.received)
+        assert(0===r.queueDepth)
+        assert(100===r.stats.delivered)
+    }
+
+    def testHeldUntilStart() {
+        val r = new Recorder(2)
+        r ! "a"
+        r ! "b"
+        assert(2===r.queueDepth)
+        r.start()
+        assert(r.done.await(10,TimeUnit.SECONDS))
+        assert(List("a","b")===r.received)
+    }
+
+    def testConflation() {
+        val r = new Recorder(3)
+        r ! ("latest",1)
+        r ! "x"
+        r ! ("latest",2)
+        r ! "y"
+        r.start()
+        assert(r.done.await(10,TimeUnit.SECONDS))
+        assert(List("x",("latest",2),"y")===r.received)
+        assert(1===r.stats.conflated)
+    }
+
+    def testCollapse() {
+        val r = new Recorder(2,2) {
+            override protected def isCollapsible(msg:Any) = msg match {
+                case ("change", _) => true
+                case _ => false
+            }
+            override protected def collapsedMessage = "resync"
+        }
+        r ! ("change",1)
+        r ! ("change",2)
+        r ! "x"         //queue is full, so the changes are replaced
+        r.start()
+        assert(r.done.await(10,TimeUnit.SECONDS))
+        assert(List("resync","x")===r.received)
+        assert(2===r.stats.collapsed)
+        assert(0===r.stats.overflowed)
+    }
+
+    def testKeepsRunningAfterError() {
+        val r = new Recorder(1) {
+            override protected def handler:PartialFunction[Any,Unit] = {
+                case "boom" => throw new AssertionError("boom")
+                case m => super.handler(m)
+            }
+        }
+        r ! "boom"
+        r ! "a"
+        r.start()
+        assert(r.done.await(10,TimeUnit.SECONDS))
+        assert(List("a")===r.received)
+    }
+}
@@ -0,0 +1,36 @@
+package net.jimmc.util
+
+import scala.util.Random
+
+import org.scalatest.Suite
+
+class TestNaturalOrder extends Suite {
+
+    def testCompare() {
+        assert(NaturalOrder.compare("img9.jpg","img10.jpg")<0)
+        assert(NaturalOrder.compare("a2b10","a2b9")>0)
+        assert(NaturalOrder.compare("a","a1")<0)
+        assert(NaturalOrder.compare("a-1","a1")<0)
+        assert(NaturalOrder.compare("1","01")>0)
+        assert(0===NaturalOrder.compare("x12y","x12y"))
+        assert(NaturalOrder.compare("n99999999999999999999","n100000000000000000000")<0)
+    }
+
+    def testSort() {
+        val a = Array("b10","a","b9","b09","a10b2","a10b1","b")
+        NaturalOrder.sort(a)
+        assert(List("a","a10b1","a10b2","b","b09","b9","b10")===a.toList)
+    }
+
+    //Sorting with keys must give the same order as compare
+    def testSortMatchesCompare() {
+        val r = new Random(12345)
+        val chars = "0012a9b.-Z"
+        val a = Array.fill(2000)(
+            (1 to r.nextInt(7)).map(_ => chars(r.nextInt(chars.length))).
+                mkString)
+        NaturalOrder.sort(a)
+        for (i <- 1 until a.length)
+            assert(NaturalOrder.compare(a(i-1),a(i))<=0)
+    }
+}
@@ -0,0 +1,69 @@
+package net.jimmc.util
+
+import org.scalatest.Suite
+
+import scala.collection.mutable.ArrayBuffer
+import scala.util.Random
+
+class TestPersistentSeq extends Suite {
+
+    def testApply() {
+        val s = PersistentSeq((0 until 1000).toList)
+        assert(1000===s.size)
+        for (i <- 0 until 1000)
+            assert(i===s(i))
+        assert((0 until 1000).toList===s.toList)
+    }
+
+    def testEmpty() {
+        val s = PersistentSeq.empty[String]
+        assert(0===s.size)
+        assert(!s.iterator.hasNext)
+        assert(List("a")===s.append("a").toList)
+    }
+
+    def testUpdatedSharesOld() {
+        val s1 = PersistentSeq(List("a","b","c"))
+        val s2 = s1.updated(1,"x")
+        assert(List("a","b","c")===s1.toList)
+        assert(List("a","x","c")===s2.toList)
+    }
+
+    //Compare a long series of random edits against an ArrayBuffer
+    def testRandomEdits() {
+        val r = new Random(12345)
+        val expected = new ArrayBuffer[Int]
+        var s = PersistentSeq.empty[Int]
+        for (n <- 0 until 5000) {
+            r.nextInt(4) match {
+                case 0 | 1 =>
+                    val i = r.nextInt(expected.length+1)
+                    expected.insert(i,n)
+                    s = s.insert(i,n)
+                case 2 if expected.length>0 =>
+                    val i = r.nextInt(expected.length)
+                    expected.remove(i)
+                    s = s.remove(i)
+                case _ if expected.length>0 =>
+                    val i = r.nextInt(expected.length)
+                    expected(i) = n
+                    s = s.updated(i,n)
+                case _ =>
+            }
+            assert(expected.length===s.size)
+        }
+        assert(expected.toList===s.toList)
+        for (i <- 0 until expected.length)
+            assert(expected(i)===s(i))
+        //Remove everything
+        while (s.size>0)
+            s = s.remove(r.nextInt(s.size))
+        assert(Nil===s.toList)
+    }
+
+    def testIndexOutOfBounds() {
+        val s = PersistentSeq(List(1,2,3))
+        intercept[IndexOutOfBoundsException] { s(3) }
+        intercept[IndexOutOfBoundsException] { s.insert(5,0) }
+    }
+}
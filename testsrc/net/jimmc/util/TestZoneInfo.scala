@@ -0,0 +1,81 @@
+package net.jimmc.util
+
+import org.scalatest.Suite
+
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.util.Date
+
+class TestZoneInfo extends Suite {
+    private val EST = -5*3600
+    private val EDT = -4*3600
+
+    //Write a version 2 tzfile: the 32-bit section has no transitions,
+    //the 64-bit section has two, the second one after 2038,
+    //and the footer has the US Eastern rules.
+    private def writeZoneFile():File = {
+        val bytes = new ByteArrayOutputStream
+        val out = new DataOutputStream(bytes)
+        def header(timecnt:Int, typecnt:Int, charcnt:Int) {
+            out.writeBytes("TZif2")
+            out.write(new Array[Byte](15))
+            for (n <- List(0,0,0,timecnt,typecnt,charcnt))
+                out.writeInt(n)
+        }
+        def ttinfo(offset:Int, dst:Int, idx:Int) {
+            out.writeInt(offset)
+            out.writeByte(dst)
+            out.writeByte(idx)
+        }
+        header(0,1,4)
+        ttinfo(EST,0,0)
+        out.writeBytes("EST\u0000")
+        header(2,2,8)
+        out.writeLong(2000000000L)          //2033
+        out.writeLong(3000000000L)          //2065
+        out.writeByte(1)
+        out.writeByte(0)
+        ttinfo(EST,0,0)
+        ttinfo(EDT,1,4)
+        out.writeBytes("EST\u0000EDT\u0000")
+        out.writeBytes("\nEST5EDT,M3.2.0,M11.1.0\n")
+        out.close()
+        val f = File.createTempFile("TestZoneInfo",null)
+        f.deleteOnExit()
+        val fout = new FileOutputStream(f)
+        fout.write(bytes.toByteArray)
+        fout.close()
+        f
+    }
+
+    private def offsetAt(tz:ZoneInfo, secs:Long) = tz.getOffset(secs*1000)/1000
+
+    def testTransitions() {
+        val tz = new ZoneInfo(writeZoneFile())
+        assert("EST"===tz.getID)
+        assert(EST===offsetAt(tz,1000000000L))      //before the first
+        assert(EDT===offsetAt(tz,2500000000L))      //after 2038
+        assert(tz.inDaylightTime(new Date(2500000000L*1000)))
+    }
+
+    def testFooterRules() {
+        val tz = new ZoneInfo(writeZoneFile())
+        assert(EDT===offsetAt(tz,3171398400L))      //2070-07-01
+        assert(EST===offsetAt(tz,3155760000L))      //2070-01-01
+        //DST starts 2070-03-09 at 2:00 EST
+        assert(EST===offsetAt(tz,3161573940L))
+        assert(EDT===offsetAt(tz,3161574060L))
+    }
+
+    def testRegistry() {
+        val f = writeZoneFile()
+        val tz1 = ZoneInfo.forFile(f)
+        val tz2 = ZoneInfo.forFile(f)
+        assert(tz1 ne tz2)
+        tz1.setID("changed")
+        assert("EST"===tz2.getID)
+        assert(EDT===offsetAt(tz2,2500000000L))
+    }
+}